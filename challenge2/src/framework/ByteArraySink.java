@@ -0,0 +1,39 @@
+package framework;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * File sink that keeps the received file on the heap. The backing array grows by doubling, so writing a file costs
+ * amortized constant time per byte.
+ */
+public class ByteArraySink implements FileSink {
+    private byte[] contents = new byte[0];
+    private int length;
+
+    @Override
+    public synchronized void write(int offset, ByteBuffer data) {
+        int end = offset + data.remaining();
+        if (end > contents.length) {
+            contents = Arrays.copyOf(contents, Math.max(end, contents.length * 2));
+        }
+        data.get(contents, offset, data.remaining());
+        length = Math.max(length, end);
+    }
+
+    @Override
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(contents, length);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,247 @@
+package framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the control lines of a challenge protocol straight from the bytes of the socket.
+ *
+ * Lines are collected in a reusable buffer and split into space separated fields in place, so recognizing a verb and
+ * decoding its integer fields allocates nothing. Base64 fields are decoded into an array of exactly the decoded size,
+ * which is the only allocation on the path of a packet. The fields of a line stay valid until the next call to
+ * {@link #next()}.
+ */
+public class ControlLineReader {
+    private static final int MAX_FIELDS = 8;
+
+    // The value of every Base64 character, -1 for bytes that are not part of the alphabet.
+    private static final byte[] BASE64_VALUES = new byte[256];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < ControlLineWriter.BASE64_ALPHABET.length; i++) {
+            BASE64_VALUES[ControlLineWriter.BASE64_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private final InputStream input;
+    private final byte[] prefix;
+
+    // Bytes read from the stream, of which position up to limit have not been consumed yet.
+    private byte[] buffer = new byte[4096];
+    private int position;
+    private int limit;
+
+    // The message of the current line (the part after the protocol prefix) and its fields.
+    private int messageStart;
+    private int messageEnd;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    /**
+     * @param input    the stream to read from
+     * @param protocol the protocol string every line starts with, such as RDTCHALLENGE/4.0
+     */
+    public ControlLineReader(InputStream input, String protocol) {
+        this.input = input;
+        this.prefix = (protocol + " ").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Blocks until the next line has arrived and splits it into fields.
+     *
+     * @return false if the stream ended
+     * @throws ProtocolException if the line does not start with the protocol string; the line is skipped
+     * @throws IOException       if reading failed
+     */
+    public boolean next() throws IOException {
+        int scan = position;
+        int newline;
+        while (true) {
+            newline = indexOf((byte) '\n', scan, limit);
+            if (newline >= 0) {
+                break;
+            }
+            scan = limit;
+            if (position > 0) {
+                // move the partial line to the front of the buffer
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                scan -= position;
+                limit -= position;
+                position = 0;
+            } else if (limit == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, limit);
+                buffer = grown;
+            }
+            int count = input.read(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                return false;
+            }
+            limit += count;
+        }
+
+        int lineStart = position;
+        int lineEnd = newline > lineStart && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+        position = newline + 1;
+
+        if (lineEnd - lineStart < prefix.length || !regionEquals(lineStart, prefix)) {
+            fieldCount = 0;
+            throw new ProtocolException("Protocol mismatch with server");
+        }
+        messageStart = lineStart + prefix.length;
+        messageEnd = lineEnd;
+
+        // split on spaces, dropping trailing empty fields like String.split does
+        fieldCount = 0;
+        int fieldStart = messageStart;
+        for (int i = messageStart; i <= messageEnd; i++) {
+            if (i == messageEnd || buffer[i] == ' ') {
+                if (fieldCount < MAX_FIELDS) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        while (fieldCount > 0 && fieldCount <= MAX_FIELDS
+                && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+            fieldCount--;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of space separated fields in the message, the verb included
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return whether the message starts with the given bytes
+     */
+    public boolean startsWith(byte[] keyword) {
+        return messageEnd - messageStart >= keyword.length && regionEquals(messageStart, keyword);
+    }
+
+    /**
+     * @return whether the field with the given index consists of exactly the given bytes
+     */
+    public boolean fieldEquals(int index, byte[] value) {
+        checkField(index);
+        return fieldEnds[index] - fieldStarts[index] == value.length && regionEquals(fieldStarts[index], value);
+    }
+
+    /**
+     * Parses a field as a decimal integer.
+     *
+     * @throws NumberFormatException if the field is not a decimal integer
+     */
+    public int getInt(int index) {
+        checkField(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        boolean negative = end > start && buffer[start] == '-';
+        if (negative) {
+            start++;
+        }
+        if (start == end || end - start > 10) {
+            throw new NumberFormatException("Not an integer in field " + index);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not an integer in field " + index);
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer out of range in field " + index);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Decodes a Base64 field.
+     *
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the field is not valid Base64
+     */
+    public byte[] getBase64(int index) {
+        checkField(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        if ((end - start) % 4 != 0) {
+            throw new IllegalArgumentException("Base64 field of invalid length");
+        }
+        int padding = 0;
+        while (padding < 2 && end - padding > start && buffer[end - 1 - padding] == '=') {
+            padding++;
+        }
+        byte[] decoded = new byte[(end - start) / 4 * 3 - padding];
+
+        int out = 0;
+        for (int i = start; i < end; i += 4) {
+            int bits = 0;
+            for (int j = 0; j < 4; j++) {
+                int value = i + j >= end - padding ? 0 : BASE64_VALUES[buffer[i + j] & 0xff];
+                if (value < 0) {
+                    throw new IllegalArgumentException("Illegal Base64 character in field " + index);
+                }
+                bits = bits << 6 | value;
+            }
+            for (int shift = 16; shift >= 0 && out < decoded.length; shift -= 8) {
+                decoded[out++] = (byte) (bits >>> shift);
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * @return the message from the start of the field with the given index up to the end of the line. Allocates, so
+     * meant for rare messages such as failure reasons.
+     */
+    public String getText(int index) {
+        checkField(index);
+        return new String(buffer, fieldStarts[index], messageEnd - fieldStarts[index], StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the whole message. Allocates, so meant for rare messages.
+     */
+    public String getMessage() {
+        return new String(buffer, messageStart, messageEnd - messageStart, StandardCharsets.US_ASCII);
+    }
+
+    private void checkField(int index) {
+        if (index < 0 || index >= Math.min(fieldCount, MAX_FIELDS)) {
+            throw new IndexOutOfBoundsException("No field " + index + " in message");
+        }
+    }
+
+    private boolean regionEquals(int offset, byte[] value) {
+        for (int i = 0; i < value.length; i++) {
+            if (buffer[offset + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -3,9 +3,13 @@ package framework;
 import java.io.*;
 import java.net.ProtocolException;
 import java.net.Socket;
-import java.util.Base64;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.zip.CRC32;
 
 import static java.lang.Thread.sleep;
@@ -28,6 +32,16 @@ import static java.lang.Thread.sleep;
 public class DRDTChallengeClient implements Runnable {
     private static String protocolString = "RDTCHALLENGE/4.0";
 
+    // verbs of the control messages
+    private static final byte[] FAIL = bytes("FAIL");
+    private static final byte[] START = bytes("START");
+    private static final byte[] SLOT = bytes("SLOT");
+    private static final byte[] PACKET = bytes("PACKET");
+    private static final byte[] CLOSED = bytes("CLOSED");
+    private static final byte[] FINISH = bytes("FINISH");
+    private static final byte[] TRANSMIT = bytes("TRANSMIT");
+    private static final byte[] NOTRANSMIT = bytes("NOTRANSMIT");
+
     // server address
     private String host;
 
@@ -46,17 +60,14 @@ public class DRDTChallengeClient implements Runnable {
     // server socket
     private Socket socket;
 
-    // scanner over socket input stream
-    private Scanner inputScanner;
-
-    // socket output stream
-    private PrintStream outputStream;
+    // parser of the control lines from the socket input stream
+    private ControlLineReader input;
 
-    // currently pending control message from server
-    private String currentControlMessage = null;
+    // writer of the control lines to the socket output stream
+    private ControlLineWriter output;
 
     // whether the simulation was started
-    private boolean simulationStarted = false;
+    private volatile boolean simulationStarted = false;
 
     // whether the simulation is finished
     private boolean simulationFinished = false;
@@ -64,11 +75,17 @@ public class DRDTChallengeClient implements Runnable {
     // whether this client is the sender
     private boolean isSender = false;
 
-    // input packet buffer
-    private ConcurrentLinkedQueue<Integer[]> inputPacketBuffer = new ConcurrentLinkedQueue<>();
+    // input packet buffer, which the protocol can block on
+    private LinkedBlockingQueue<byte[]> inputPacketBuffer = new LinkedBlockingQueue<>();
+
+    // receives the packets instead of the input packet buffer, if set
+    private Consumer<ByteBuffer> packetListener;
 
     // output packet buffer
-    private ConcurrentLinkedQueue<Integer[]> outputPacketBuffer = new ConcurrentLinkedQueue<>();
+    private ConcurrentLinkedQueue<byte[]> outputPacketBuffer = new ConcurrentLinkedQueue<>();
+
+    // number of packets in the output packet buffer, as size() of the buffer is not constant time
+    private AtomicInteger outputPacketCount = new AtomicInteger();
 
     // challenge string
     private byte[] challenge;
@@ -118,34 +135,35 @@ public class DRDTChallengeClient implements Runnable {
      *
      * @throws IOException if the connection failed
      */
-    private void connect() throws IOException, InterruptedException {
+    private void connect() throws IOException {
         try {
             // Open comms
             socket = new Socket(host, port);
-            inputScanner = new Scanner(new BufferedInputStream(
-                    socket.getInputStream()));
-            outputStream = new PrintStream(new BufferedOutputStream(
-                    socket.getOutputStream()));
+            // every control message is flushed on its own, so do not let Nagle hold back a TRANSMIT
+            socket.setTcpNoDelay(true);
+            input = new ControlLineReader(new BufferedInputStream(
+                    socket.getInputStream()), protocolString);
+            output = new ControlLineWriter(socket.getOutputStream(), protocolString);
 
-            if (!getControlMessageBlocking().equals("REGISTER")) {
+            readControlMessage();
+            if (!input.getMessage().equals("REGISTER")) {
                 throw new ProtocolException("Did not get expected hello from server");
             }
-            clearControlMessage();
 
             // register
             sendControlMessage("REGISTER " + this.groupKey);
 
-            String reply = getControlMessageBlocking();
+            readControlMessage();
+            String reply = input.getMessage();
             if (!reply.equals("OK")) {
                 String reason = reply.substring(reply.indexOf(' ') + 1);
                 throw new ProtocolException("Could not register with server: " + reason);
             }
-            clearControlMessage();
 
             // start handling messages
             eventLoopThread.start();
 
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             throw e;
         }
     }
@@ -204,8 +222,11 @@ public class DRDTChallengeClient implements Runnable {
             simulationFinished = true;
 
 
-            // stop the message loop
+            // stop the message loop, which may be blocked reading from the socket
             eventLoopThread.interrupt();
+            if (eventLoopThread.isAlive()) {
+                socket.shutdownInput();
+            }
             try {
                 eventLoopThread.join();
             } catch (InterruptedException e) {
@@ -246,95 +267,79 @@ public class DRDTChallengeClient implements Runnable {
      */
     public void run() {
         boolean stopThread = false;
-        while (!stopThread && !simulationFinished) {
+        while (!stopThread && !simulationFinished && !Thread.currentThread().isInterrupted()) {
             try {
-                String message = getControlMessageBlocking();
-                String[] splitMessage = message.split(" ");
-
-                if (splitMessage.length > 0
-                        && splitMessage[0].startsWith("FAIL")) {
-                    if (message.split(" ").length > 1) {
-                        System.err.println("Failure: "
-                                + message.substring(message.indexOf(' ') + 1));
+                readControlMessage();
+                int fieldCount = input.getFieldCount();
+
+                if (fieldCount > 0 && input.startsWith(FAIL)) {
+                    if (fieldCount > 1) {
+                        System.err.println("Failure: " + input.getText(1));
                     }
-                    clearControlMessage();
                     stopThread = true;
                     simulationStarted = false;
                     simulationFinished = true;
 
-                } else if (splitMessage.length > 1 && splitMessage[0].startsWith("START")) {
-                    // start the simulation
+                } else if (fieldCount > 1 && input.startsWith(START)) {
+                    // start the simulation, once the file is known
+                    fileID = input.getInt(1);
+                    challenge = input.getBase64(2);
                     simulationStarted = true;
-                    fileID = Integer.parseInt(splitMessage[1]);
-                    challenge = Base64.getDecoder().decode(splitMessage[2]);
 
                     // upload file checksum
                     if (isSender) {
                         sendChecksum("IN", String.format("rdtcInput%d.png", fileID));
                     }
 
-                } else if (splitMessage.length > 0
-                        && splitMessage[0].startsWith("SLOT")) {
-                    if (splitMessage.length > 1) {
-                        tick = Integer.parseInt(splitMessage[1]);
+                } else if (fieldCount > 0 && input.startsWith(SLOT)) {
+                    if (fieldCount > 1) {
+                        tick = input.getInt(1);
                     }
                     // We got offered a slot by the server to send a packet in.
                     boolean transmitted = false;
                     if (simulationStarted) {
                         // if there are packets available, send one
-                        Integer[] packetContentsInIntegers = this.outputPacketBuffer.poll();
-                        if (packetContentsInIntegers != null) {
-                            // convert 32-bit integers to 8-bit bytes
-                            byte[] packetContents = new byte[packetContentsInIntegers.length];
-                            for (int i = 0; i < packetContentsInIntegers.length; i++) {
-                                packetContents[i] = (byte) ((packetContentsInIntegers[i] & 0x000000ff));
-                            }
-                            this.sendControlMessage("TRANSMIT "
-                                    + Base64.getEncoder().encodeToString(packetContents));
+                        byte[] packetContents = this.outputPacketBuffer.poll();
+                        if (packetContents != null) {
+                            outputPacketCount.decrementAndGet();
+                            output.sendBase64(TRANSMIT, packetContents);
                             transmitted = true;
                         }
                     }
 
                     if (!transmitted) {
-                        this.sendControlMessage("NOTRANSMIT");
+                        output.send(NOTRANSMIT);
                     }
 
-                } else if (splitMessage.length > 0
-                        && splitMessage[0].startsWith("PACKET")) {
+                } else if (fieldCount > 0 && input.startsWith(PACKET)) {
                     // We received a packet from the server
                     if (simulationStarted) {
-                        Integer[] packetContentsInIntegers;
-                        if (splitMessage.length > 1) {
+                        byte[] packetContents;
+                        if (fieldCount > 1) {
                             try {
-                                // convert base64 string to bytes
-                                byte[] packetContents = Base64.getDecoder().decode(splitMessage[1]);
-                                // convert 8-bit bytes to 32-bit integers
-                                packetContentsInIntegers = new Integer[packetContents.length];
-                                for (int i = 0; i < packetContents.length; i++) {
-                                    packetContentsInIntegers[i] = (packetContents[i] & 0x000000ff);
-                                }
+                                // convert base64 field to bytes
+                                packetContents = input.getBase64(1);
                             } catch (IllegalArgumentException e) {
                                 e.printStackTrace();
-                                packetContentsInIntegers = new Integer[0];
+                                packetContents = new byte[0];
                             }
                         } else {
-                            packetContentsInIntegers = new Integer[0];
+                            packetContents = new byte[0];
                         }
 
-                        this.inputPacketBuffer.offer(packetContentsInIntegers);
+                        deliverPacket(packetContents);
                     }
 
-                } else if (message.startsWith("CLOSED")) {
+                } else if (input.startsWith(CLOSED)) {
                     simulationStarted = false;
                     simulationFinished = true;
 
                     System.err.println("Simulation aborted!");
-                    if (splitMessage.length > 1) {
-                        System.err.println("Reason: "
-                                + message.substring(message.indexOf(' ') + 1));
+                    if (fieldCount > 1) {
+                        System.err.println("Reason: " + input.getText(1));
                     }
                     Utils.Timeout.Stop();
-                } else if (message.startsWith("FINISH")) {
+                } else if (input.startsWith(FINISH)) {
                     simulationStarted = false;
                     simulationFinished = true;
 
@@ -343,13 +348,12 @@ public class DRDTChallengeClient implements Runnable {
                     Utils.Timeout.Stop();
 
                 }
-
-                clearControlMessage();
-
-                sleep(1);
             } catch (ProtocolException e) {
-            } catch (InterruptedException e) {
+            } catch (EOFException e) {
+                // the server closed the connection, or stop() shut down the input
                 stopThread = true;
+                simulationStarted = false;
+                simulationFinished = true;
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -357,74 +361,74 @@ public class DRDTChallengeClient implements Runnable {
     }
 
     /**
-     * Waits for a control message from the server
+     * Waits for a control message from the server, which can then be inspected through the input reader
      *
-     * @return the message
      * @throws ProtocolException if a corrupt message was received
+     * @throws EOFException      if the connection was closed
      */
-    private String getControlMessageBlocking() throws InterruptedException, IOException {
-        try {
-            // Block while waiting for message
-            String controlMessage = getControlMessage();
-            while (controlMessage == null) {
-                controlMessage = getControlMessage();
-            }
-            sleep(10);
-            return controlMessage;
-        } catch (Exception e) {
-            throw e;
+    private void readControlMessage() throws IOException {
+        // Block while waiting for message
+        if (simulationFinished || !input.next()) {
+            throw new EOFException("Connection closed");
         }
     }
 
-    Integer[] receivePacket() {
+    byte[] receivePacket() {
         return inputPacketBuffer.poll();
     }
 
-    void sendPacket(Integer[] packet) throws IllegalArgumentException {
-        if (packet == null) {
-            throw new IllegalArgumentException("packet == null");
-        }
-        for (int i = 0; i < packet.length; i++) {
-            if (packet[i] == null) {
-                throw new IllegalArgumentException("packet[" + i + "] == null");
-            }
-        }
-
-        this.outputPacketBuffer.offer(packet);
-    }
-
-    public int getTick() {
-        return tick;
+    byte[] receivePacket(long timeout, TimeUnit unit) throws InterruptedException {
+        return inputPacketBuffer.poll(timeout, unit);
     }
 
     /**
-     * Removes the first message from the queue Call this when you have
-     * processed a message
+     * Hands a received packet to the listener, or queues it if there is none
      */
-    private void clearControlMessage() {
-        this.currentControlMessage = null;
+    private void deliverPacket(byte[] packet) {
+        synchronized (inputPacketBuffer) {
+            if (packetListener != null) {
+                packetListener.accept(ByteBuffer.wrap(packet));
+            } else {
+                inputPacketBuffer.offer(packet);
+            }
+        }
     }
 
     /**
-     * Obtains a message from the server, if any exists.
-     *
-     * @return the message, null if no message was present
-     * @throws IOException
+     * Sets the listener that receives every packet on the event loop thread, or removes it if null. Packets that
+     * were queued before are handed to the new listener first.
      */
-    private synchronized String getControlMessage() throws IOException {
-        if (!simulationFinished) {
-            if (this.currentControlMessage == null
-                    && inputScanner.hasNextLine()) {
-                String line = inputScanner.nextLine();
-                if (line.startsWith(protocolString)) {
-                    this.currentControlMessage = line.substring(protocolString
-                            .length() + 1);
-                } else {
-                    throw new ProtocolException("Protocol mismatch with server");
+    void setPacketListener(Consumer<ByteBuffer> listener) {
+        synchronized (inputPacketBuffer) {
+            packetListener = listener;
+            if (listener != null) {
+                byte[] packet;
+                while ((packet = inputPacketBuffer.poll()) != null) {
+                    listener.accept(ByteBuffer.wrap(packet));
                 }
             }
         }
-        return this.currentControlMessage;
+    }
+
+    void sendPacket(byte[] packet) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet == null");
+        }
+
+        outputPacketCount.incrementAndGet();
+        this.outputPacketBuffer.offer(packet);
+    }
+
+    int getOutputBacklog() {
+        return outputPacketCount.get();
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    private static byte[] bytes(String verb) {
+        return verb.getBytes(StandardCharsets.US_ASCII);
     }
 
     /**
@@ -433,7 +437,10 @@ public class DRDTChallengeClient implements Runnable {
      * @param message the message to send
      */
     private void sendControlMessage(String message) {
-        outputStream.print(protocolString + " " + message + "\n");
-        outputStream.flush();
+        try {
+            output.send(message);
+        } catch (IOException e) {
+            // a broken connection shows up on the reading side
+        }
     }
 }
@@ -0,0 +1,25 @@
+package framework;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access sink for the bytes of a received file. Data may be written in any order; the length of the file is
+ * the end of the furthest write.
+ */
+public interface FileSink extends Closeable {
+    /**
+     * Writes the remaining bytes of a buffer at the given offset in the file.
+     *
+     * @param offset the offset in the file to write at
+     * @param data   the bytes to write, from its position up to its limit. The position is advanced to the limit.
+     * @throws IOException if the bytes could not be written
+     */
+    void write(int offset, ByteBuffer data) throws IOException;
+
+    /**
+     * @return the number of bytes in the file, being the end of the furthest write
+     */
+    int length();
+}
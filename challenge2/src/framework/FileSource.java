@@ -0,0 +1,24 @@
+package framework;
+
+import java.io.Closeable;
+
+/**
+ * Random access source of the bytes of a file to transmit.
+ */
+public interface FileSource extends Closeable {
+    /**
+     * @return the number of bytes in the file
+     */
+    int size();
+
+    /**
+     * Copies bytes of the file into an array.
+     *
+     * @param offset            the offset in the file to start reading at
+     * @param destination       the array to copy the bytes to
+     * @param destinationOffset the offset in the array to start writing at
+     * @param length            the maximum number of bytes to copy
+     * @return the number of bytes copied, which is less than length at the end of the file
+     */
+    int read(int offset, byte[] destination, int destinationOffset, int length);
+}
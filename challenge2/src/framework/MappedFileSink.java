@@ -0,0 +1,101 @@
+package framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * File sink that writes every payload straight into a memory mapping of the output file at its own offset.
+ *
+ * The file is mapped in regions of {@value #REGION_SIZE} bytes, which are mapped (and pre-sized on disk) the first
+ * time a write touches them. On close the file is truncated to the end of the furthest write.
+ */
+public class MappedFileSink implements FileSink {
+    private static final int REGION_SIZE = 1 << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[1];
+    private int length;
+
+    /**
+     * Creates (or overwrites) the given file.
+     * @param fileToWrite the file to write
+     * @throws IOException if the file could not be created
+     */
+    public MappedFileSink(File fileToWrite) throws IOException {
+        file = new RandomAccessFile(fileToWrite, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+    }
+
+    /**
+     * Creates the output file for the specified ID.
+     * @param id the file ID
+     * @param timestamp the timestamp that is part of the output file name
+     * @return the sink writing to the file
+     * @throws IOException if the file could not be created
+     */
+    public static MappedFileSink create(int id, long timestamp) throws IOException {
+        return new MappedFileSink(new File(String.format("rdtcOutput%d.%d.png", id, timestamp)));
+    }
+
+    @Override
+    public synchronized void write(int offset, ByteBuffer data) throws IOException {
+        int position = offset;
+        while (data.hasRemaining()) {
+            MappedByteBuffer region = region(position / REGION_SIZE);
+            int regionOffset = position % REGION_SIZE;
+            int count = Math.min(data.remaining(), REGION_SIZE - regionOffset);
+
+            ByteBuffer chunk = data.duplicate();
+            chunk.limit(chunk.position() + count);
+            region.position(regionOffset);
+            region.put(chunk);
+
+            data.position(data.position() + count);
+            position += count;
+        }
+        length = Math.max(length, position);
+    }
+
+    @Override
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * Returns the mapping of the given region, mapping it if this is the first write to it.
+     */
+    private MappedByteBuffer region(int index) throws IOException {
+        if (index >= regions.length) {
+            MappedByteBuffer[] grown = new MappedByteBuffer[Math.max(index + 1, regions.length * 2)];
+            System.arraycopy(regions, 0, grown, 0, regions.length);
+            regions = grown;
+        }
+        if (regions[index] == null) {
+            regions[index] = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * REGION_SIZE, REGION_SIZE);
+        }
+        return regions[index];
+    }
+
+    /**
+     * Flushes the written data to disk and truncates the file to its length.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (MappedByteBuffer region : regions) {
+                if (region != null) {
+                    region.force();
+                }
+            }
+            channel.truncate(length);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * File source backed by a memory mapping of the whole input file, so packets can be copied straight out of the page
+ * cache instead of reading the file onto the heap first.
+ */
+public class MappedFileSource implements FileSource {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Maps the given file.
+     * @param fileToTransmit the file to map
+     * @throws IOException if the file could not be opened or is larger than 2 GB
+     */
+    public MappedFileSource(File fileToTransmit) throws IOException {
+        file = new RandomAccessFile(fileToTransmit, "r");
+        try {
+            long size = file.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to transmit: " + fileToTransmit);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the input file with the specified ID.
+     * @param id the file ID
+     * @return the mapped file
+     * @throws IOException if the file could not be opened
+     */
+    public static MappedFileSource open(int id) throws IOException {
+        return new MappedFileSource(new File(String.format("rdtcInput%d.png", id)));
+    }
+
+    @Override
+    public int size() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public int read(int offset, byte[] destination, int destinationOffset, int length) {
+        int count = Math.max(0, Math.min(length, buffer.capacity() - offset));
+        // a duplicate has its own position, so several threads can read at the same time
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(destination, destinationOffset, count);
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
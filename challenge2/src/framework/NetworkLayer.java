@@ -1,5 +1,9 @@
 package framework;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 /*
  *                                                          *
  **                 DO NOT EDIT THIS FILE                  **
@@ -32,15 +36,102 @@ public class NetworkLayer {
      * @param packet
      */
     public void sendPacket(Integer[] packet) throws IllegalArgumentException{
+        client.sendPacket(Utils.toBytes(packet));
+    }
+
+    /**
+     * Send a packet through the unreliable medium without boxing its contents.
+     * The network layer takes ownership of the array, so it must not be modified afterwards.
+     * @param packet the content of the packet
+     */
+    public void sendPacket(byte[] packet) throws IllegalArgumentException{
         client.sendPacket(packet);
     }
+
+    /**
+     * Send the remaining bytes of a buffer as one packet through the unreliable medium.
+     * The bytes are copied, so the buffer may be reused once this method returns.
+     * @param packet the content of the packet, from its position up to its limit
+     */
+    public void sendPacket(ByteBuffer packet) throws IllegalArgumentException{
+        if (packet == null) {
+            throw new IllegalArgumentException("packet == null");
+        }
+        byte[] contents = new byte[packet.remaining()];
+        packet.get(contents);
+        client.sendPacket(contents);
+    }
     
     /**
      * Receive a packet from the unreliable medium
      * @return The content of the packet as an array of Integers, or null if no packet was received
      */
     public Integer[] receivePacket(){
-        return client.receivePacket();
+        byte[] packet = client.receivePacket();
+        return packet == null ? null : Utils.toIntegers(packet);
+    }
+
+    /**
+     * Receive a packet from the unreliable medium into a buffer, without boxing its contents.
+     * The packet is written at the position of the buffer. If the buffer has fewer bytes remaining than the packet is
+     * long, the remainder of the packet is silently discarded.
+     * @param destination the buffer to write the content of the packet to
+     * @return true if a packet was received, false if no packet was available
+     */
+    public boolean receivePacket(ByteBuffer destination){
+        byte[] packet = client.receivePacket();
+        if (packet == null) {
+            return false;
+        }
+        destination.put(packet, 0, Math.min(packet.length, destination.remaining()));
+        return true;
+    }
+
+    /**
+     * Receive a packet from the unreliable medium, waiting for one to arrive
+     * @param timeout how long to wait at most
+     * @param unit the unit of the timeout
+     * @return The content of the packet as an array of Integers, or null if no packet arrived in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public Integer[] receivePacket(long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] packet = client.receivePacket(timeout, unit);
+        return packet == null ? null : Utils.toIntegers(packet);
+    }
+
+    /**
+     * Receive a packet from the unreliable medium into a buffer, waiting for one to arrive.
+     * The packet is written like {@link #receivePacket(ByteBuffer)} does.
+     * @param destination the buffer to write the content of the packet to
+     * @param timeout how long to wait at most
+     * @param unit the unit of the timeout
+     * @return true if a packet was received, false if no packet arrived in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean receivePacket(ByteBuffer destination, long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] packet = client.receivePacket(timeout, unit);
+        if (packet == null) {
+            return false;
+        }
+        destination.put(packet, 0, Math.min(packet.length, destination.remaining()));
+        return true;
+    }
+
+    /**
+     * Have every received packet pushed to a listener as soon as it arrives, instead of queueing it for the receive
+     * methods. The listener runs on the thread that talks to the server, so it should return quickly; the buffer it
+     * gets is only valid during the call. Packets that were already queued are passed to the listener first.
+     * @param listener the listener, or null to queue packets again
+     */
+    public void onPacket(Consumer<ByteBuffer> listener) {
+        client.setPacketListener(listener);
+    }
+
+    /**
+     * @return the number of packets that were sent but are still waiting for a slot from the server
+     */
+    public int getOutputBacklog() {
+        return client.getOutputBacklog();
     }
 
     /**
@@ -0,0 +1,229 @@
+package framework;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel used by {@link Utils.Timeout}.
+ *
+ * Timers are kept in {@value #LEVELS} wheels of {@value #SLOTS} slots each. The lowest wheel advances one slot per
+ * tick, every higher wheel advances one slot per full revolution of the wheel below it and cascades the timers of that
+ * slot down when it does. Arming and cancelling a timer are O(1); expiry has a granularity of one tick.
+ *
+ * Only the thread calling {@link #advanceTo(long)} touches the wheels. Other threads hand over new timers through a
+ * queue, and cancelled timers are unlinked lazily by the advancing thread.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // the range of deltas (in ticks) that fit on the wheels; longer timers are parked in the last slot of the top level
+    private static final long MAX_DELTA = 1L << (SLOT_BITS * LEVELS);
+
+    // wheels[level][slot] is the sentinel of a circular doubly linked list of timers
+    private final Timer[][] wheels = new Timer[LEVELS][SLOTS];
+
+    // timers armed by other threads that have not been placed on a wheel yet
+    private final ConcurrentLinkedQueue<Timer> pending = new ConcurrentLinkedQueue<>();
+
+    // timers that were cancelled and still have to be unlinked from their slot
+    private final ConcurrentLinkedQueue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+
+    // the last tick that has been processed
+    private long currentTick;
+
+    /**
+     * Constructs an empty wheel.
+     * @param startTick the tick to start counting from
+     */
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timer sentinel = new Timer(null, null, 0);
+                sentinel.next = sentinel;
+                sentinel.previous = sentinel;
+                wheels[level][slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Arms a timer. Safe to call from any thread.
+     *
+     * @param deadlineTick the tick at (or after) which the timer expires
+     * @param handler      the event handler that is called once the timer expires
+     * @param tag          the tag handed to the event handler
+     * @return a handle that can be used to cancel the timer
+     */
+    public Timer schedule(long deadlineTick, ITimeoutEventHandler handler, Object tag) {
+        Timer timer = new Timer(handler, tag, deadlineTick);
+        pending.offer(timer);
+        return timer;
+    }
+
+    /**
+     * Processes every tick up to and including the given one, invoking the handlers of all timers that expired.
+     * Must only be called from a single thread.
+     *
+     * @param tick the tick to advance to
+     */
+    public void advanceTo(long tick) {
+        Timer expired = null;
+
+        drainCancelled();
+        for (Timer timer = pending.poll(); timer != null; timer = pending.poll()) {
+            if (!timer.isCancelled()) {
+                expired = place(timer, expired);
+            }
+        }
+
+        while (currentTick < tick) {
+            currentTick++;
+            expired = cascade(expired);
+
+            Timer sentinel = wheels[0][(int) (currentTick & SLOT_MASK)];
+            while (sentinel.next != sentinel) {
+                Timer timer = sentinel.next;
+                timer.unlink();
+                expired = place(timer, expired);
+            }
+        }
+
+        // Invoke the event handlers after the wheel is consistent again, so handlers may arm new timers
+        while (expired != null) {
+            Timer timer = expired;
+            expired = timer.next;
+            timer.next = null;
+            if (timer.expire()) {
+                timer.handler.TimeoutElapsed(timer.tag);
+            }
+        }
+    }
+
+    /**
+     * Moves the timers of every higher level slot that has come due one level down.
+     */
+    private Timer cascade(Timer expired) {
+        int level = 1;
+        while (level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+            level++;
+        }
+        // cascade from the highest due level downwards, so timers can fall through more than one level
+        for (int l = level - 1; l >= 1; l--) {
+            Timer sentinel = wheels[l][(int) ((currentTick >>> (SLOT_BITS * l)) & SLOT_MASK)];
+            while (sentinel.next != sentinel) {
+                Timer timer = sentinel.next;
+                timer.unlink();
+                expired = place(timer, expired);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Puts a timer in the slot matching its deadline, or prepends it to the list of expired timers when it is due.
+     */
+    private Timer place(Timer timer, Timer expired) {
+        long delta = timer.deadlineTick - currentTick;
+        if (delta <= 0) {
+            timer.next = expired;
+            return timer;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        long slotTick = delta < MAX_DELTA ? timer.deadlineTick : currentTick + MAX_DELTA - 1;
+        timer.linkBefore(wheels[level][(int) ((slotTick >>> (SLOT_BITS * level)) & SLOT_MASK)]);
+        return expired;
+    }
+
+    /**
+     * Unlinks the timers that were cancelled since the last call.
+     */
+    private void drainCancelled() {
+        for (Timer timer = cancelled.poll(); timer != null; timer = cancelled.poll()) {
+            if (timer.next != null) {
+                timer.unlink();
+            }
+        }
+    }
+
+    /**
+     * Handle to an armed timer.
+     */
+    public class Timer {
+        private static final int ARMED = 0;
+        private static final int EXPIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final ITimeoutEventHandler handler;
+        private final Object tag;
+        private final long deadlineTick;
+        private int state = ARMED;
+
+        // links within a slot, only touched by the advancing thread
+        private Timer next;
+        private Timer previous;
+
+        private Timer(ITimeoutEventHandler handler, Object tag, long deadlineTick) {
+            this.handler = handler;
+            this.tag = tag;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancels the timer, so its handler will not be called.
+         * @return true if the timer was still armed
+         */
+        public boolean cancel() {
+            synchronized (this) {
+                if (state != ARMED) {
+                    return false;
+                }
+                state = CANCELLED;
+            }
+            cancelled.offer(this);
+            return true;
+        }
+
+        /**
+         * @return whether the timer was cancelled
+         */
+        public synchronized boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        /**
+         * @return the tag handed to the event handler
+         */
+        public Object getTag() {
+            return tag;
+        }
+
+        private synchronized boolean expire() {
+            if (state != ARMED) {
+                return false;
+            }
+            state = EXPIRED;
+            return true;
+        }
+
+        private void linkBefore(Timer sentinel) {
+            next = sentinel;
+            previous = sentinel.previous;
+            previous.next = this;
+            sentinel.previous = this;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            next = null;
+            previous = null;
+        }
+    }
+}
@@ -4,8 +4,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.lang.management.ManagementFactory;
-import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /*
  *                                                          *
@@ -71,6 +71,21 @@ public class Utils {
         }
     }
 
+    /**
+     * Gets the contents of the specified file without boxing every byte.
+     * @param id the file ID
+     * @return the contents of the file to transmit, or null if it could not be read
+     */
+    public static byte[] getFileBytes(int id) {
+        try {
+            return Files.readAllBytes(Paths.get(String.format("rdtcInput%d.png", id)));
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println(e.getStackTrace());
+            return null;
+        }
+    }
+
     /**
      * Writes the contents of the fileContents array to the specified file.
      * @param fileContents the contents to write
@@ -88,17 +103,68 @@ public class Utils {
         }
     }
 
+    /**
+     * Writes the contents of the fileContents array to the specified file in one go.
+     * @param fileContents the contents to write
+     * @param id the file ID
+     */
+    public static void setFileContents(byte[] fileContents, int id, long timestamp) {
+        File fileToWrite = new File(String.format("rdtcOutput%d.%d.png", id, timestamp));
+        try (FileOutputStream fileStream = new FileOutputStream(fileToWrite)) {
+            fileStream.write(fileContents);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println(e.getStackTrace());
+        }
+    }
+
+    /**
+     * Converts an array of integers in the range 0-255 to bytes.
+     * @param values the integers to convert
+     * @return the bytes
+     * @throws IllegalArgumentException if one of the integers is null
+     */
+    public static byte[] toBytes(Integer[] values) throws IllegalArgumentException {
+        if (values == null) {
+            throw new IllegalArgumentException("packet == null");
+        }
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("packet[" + i + "] == null");
+            }
+            bytes[i] = (byte) (values[i] & 0x000000ff);
+        }
+        return bytes;
+    }
+
+    /**
+     * Converts bytes to an array of integers in the range 0-255.
+     * @param bytes the bytes to convert
+     * @return the integers
+     */
+    public static Integer[] toIntegers(byte[] bytes) {
+        Integer[] values = new Integer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            values[i] = bytes[i] & 0x000000ff;
+        }
+        return values;
+    }
+
     /**
      * Helper class for setting timeouts. Supplied for convenience.
+     *
+     * Timeouts are kept on a {@link TimingWheel} with a tick of one millisecond, so arming and cancelling a timeout
+     * costs the same no matter how many timeouts are outstanding.
      * 
      * @author Jaco ter Braak & Frans van Dijk, University of Twente
      * @version 09-02-2016
      */
     public static class Timeout implements Runnable {
-        private static Map<Date, Map<ITimeoutEventHandler, List<Object>>> eventHandlers = new HashMap<>();
+        private static final long START_NANOS = System.nanoTime();
+        private static TimingWheel wheel = new TimingWheel(currentTick());
         private static Thread eventTriggerThread;
         private static boolean started = false;
-        private static ReentrantLock lock = new ReentrantLock();
 
         /**
          * Starts the helper thread
@@ -132,24 +198,18 @@ public class Utils {
          *            the timeout interval, starting now
          * @param handler
          *            the event handler that is called once the timeout elapses
+         * @return a handle that can be used to cancel the timeout before it elapses
          */
-        public static void SetTimeout(long millisecondsTimeout,
+        public static TimingWheel.Timer SetTimeout(long millisecondsTimeout,
                 ITimeoutEventHandler handler, Object tag) {
-            Date elapsedMoment = new Date();
-            elapsedMoment
-                    .setTime(elapsedMoment.getTime() + millisecondsTimeout);
-
-            lock.lock();
-            if (!eventHandlers.containsKey(elapsedMoment)) {
-                eventHandlers.put(elapsedMoment,
-                        new HashMap<>());
-            }
-            if (!eventHandlers.get(elapsedMoment).containsKey(handler)) {
-                eventHandlers.get(elapsedMoment).put(handler,
-                        new ArrayList<>());
-            }
-            eventHandlers.get(elapsedMoment).get(handler).add(tag);
-            lock.unlock();
+            return wheel.schedule(currentTick() + Math.max(millisecondsTimeout, 0), handler, tag);
+        }
+
+        /**
+         * @return the number of milliseconds since the class was loaded
+         */
+        private static long currentTick() {
+            return (System.nanoTime() - START_NANOS) / 1_000_000;
         }
 
         /**
@@ -158,48 +218,11 @@ public class Utils {
         @Override
         public void run() {
             boolean runThread = true;
-            ArrayList<Date> datesToRemove = new ArrayList<>();
-            HashMap<ITimeoutEventHandler, List<Object>> handlersToInvoke = new HashMap<>();
-            Date now;
 
             while (runThread) {
                 try {
-                    now = new Date();
-
-                    // If any timeouts have elapsed, trigger their handlers
-                    lock.lock();
-
-                    for (Date date : eventHandlers.keySet()) {
-                        if (date.before(now)) {
-                            datesToRemove.add(date);
-                            for (ITimeoutEventHandler handler : eventHandlers.get(date).keySet()) {
-                                if (!handlersToInvoke.containsKey(handler)) {
-                                    handlersToInvoke.put(handler,
-                                            new ArrayList<>());
-                                }
-                                for (Object tag : eventHandlers.get(date).get(
-                                        handler)) {
-                                    handlersToInvoke.get(handler).add(tag);
-                                }
-                            }
-                        }
-                    }
-
-                    // Remove elapsed events
-                    for (Date date : datesToRemove) {
-                        eventHandlers.remove(date);
-                    }
-                    datesToRemove.clear();
-
-                    lock.unlock();
-
-                    // Invoke the event handlers outside of the lock, to prevent
-                    // deadlocks
-                    for (ITimeoutEventHandler handler : handlersToInvoke
-                            .keySet()) {
-                        handlersToInvoke.get(handler).forEach(handler::TimeoutElapsed);
-                    }
-                    handlersToInvoke.clear();
+                    // Trigger the handlers of all timeouts that have elapsed since the last tick
+                    wheel.advanceTo(currentTick());
 
                     Thread.sleep(1);
                 } catch (InterruptedException e) {
@@ -0,0 +1,105 @@
+package my_protocol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of acknowledged sequence numbers that the ack thread and the sender thread can share without locks.
+ *
+ * Only a window of packets from the first unacknowledged one is kept, one bit each in an AtomicLongArray that is
+ * reused round robin, so the memory use does not grow with the file. Packets below the window are acknowledged, and
+ * the window moves up as soon as its first packet is. Marking a packet acknowledged is a single compare-and-set and
+ * tells the caller whether it was the first to do so.
+ */
+public class AckBitmap {
+
+    private final AtomicLongArray words;
+    private final int capacity;
+
+    // The first packet that has not been acknowledged. Only moved by the thread that calls set.
+    private volatile int base;
+
+    /**
+     * @param capacity the size of the window in packets, rounded up to a multiple of 64
+     */
+    public AckBitmap(int capacity) {
+        words = new AtomicLongArray((Math.max(capacity, 1) + 63) / 64);
+        this.capacity = words.length() * 64;
+    }
+
+    /**
+     * Marks a packet as acknowledged, and moves the window up if it was the first one. May only be called from one
+     * thread.
+     *
+     * @return true if the packet was not acknowledged before. Packets beyond the window are ignored and return false.
+     */
+    public boolean set(int sequenceNumber) {
+        if (sequenceNumber < base || sequenceNumber >= base + capacity || !setBit(sequenceNumber)) {
+            return false;
+        }
+        if (sequenceNumber == base) {
+            // clear the bits before publishing the new base, so the slots are empty by the time the sender may use them
+            // again. A reader in between may briefly see one of these packets as unacknowledged, which at worst costs
+            // a retransmission.
+            int first = base;
+            int next = first + 1;
+            while (next < first + capacity && isBitSet(next)) {
+                next++;
+            }
+            for (int i = first; i < next; i++) {
+                clearBit(i);
+            }
+            base = next;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the packet has been acknowledged. May be called from any thread.
+     */
+    public boolean get(int sequenceNumber) {
+        return sequenceNumber < base || isBitSet(sequenceNumber);
+    }
+
+    /**
+     * @return the first packet that has not been acknowledged
+     */
+    public int getBase() {
+        return base;
+    }
+
+    /**
+     * @return the number of packets in the window
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    private boolean setBit(int sequenceNumber) {
+        int index = (sequenceNumber >>> 6) % words.length();
+        long bit = 1L << sequenceNumber;
+        while (true) {
+            long word = words.get(index);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean isBitSet(int sequenceNumber) {
+        return (words.get((sequenceNumber >>> 6) % words.length()) & (1L << sequenceNumber)) != 0;
+    }
+
+    private void clearBit(int sequenceNumber) {
+        int index = (sequenceNumber >>> 6) % words.length();
+        long bit = 1L << sequenceNumber;
+        while (true) {
+            long word = words.get(index);
+            if (words.compareAndSet(index, word, word & ~bit)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package my_protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sender side of a protocol that lets an {@link AckReceiver} handle its acks.
+ *
+ * The receiver decodes every ack into the sequence numbers it acknowledges, filters out the ones that were
+ * acknowledged before and hands the rest to {@link #onAcks} in batches: all acks that arrived while the previous
+ * batch was processed are delivered in one call, so the sender is woken up once per batch instead of once per ack.
+ */
+public interface AckListener {
+
+    /**
+     * Decodes an ack into the sequence numbers it acknowledges. By default an ack is the {@link SequenceNumber} header
+     * of a single packet followed by a {@link PacketCrc} trailer; a corrupted ack acknowledges nothing.
+     *
+     * @param ack                  the ack, from position 0 up to its limit
+     * @param firstUnacknowledged  the first packet that has not been acknowledged, to resolve wrapped sequence numbers
+     * @param sequenceNumbers      the array to store the sequence numbers in, of at least
+     *                             {@link #getMaxAcksPerPacket()} elements
+     * @return the number of sequence numbers stored
+     */
+    default int decodeAck(ByteBuffer ack, int firstUnacknowledged, int[] sequenceNumbers) {
+        if (PacketCrc.check(ack) == PacketCrc.CORRUPT) {
+            return 0;
+        }
+        int wrapped = SequenceNumber.read(ack);
+        if (wrapped < 0) {
+            return 0;
+        }
+        sequenceNumbers[0] = SequenceNumber.unwrap(wrapped, firstUnacknowledged);
+        return 1;
+    }
+
+    /**
+     * @return the most sequence numbers {@link #decodeAck} stores for a single ack
+     */
+    default int getMaxAcksPerPacket() {
+        return 1;
+    }
+
+    /**
+     * Called on the thread of the ack receiver with packets that were acknowledged for the first time, in the order
+     * their acks arrived. The round trip time estimator and congestion controller of the receiver have already been
+     * told about them.
+     *
+     * @param sequenceNumbers the sequence numbers of the packets, which are only valid during the call
+     * @param count           the number of sequence numbers in the array, at least one
+     * @param nanoTime        the time the batch was picked up, as given by System.nanoTime()
+     */
+    void onAcks(int[] sequenceNumbers, int count, long nanoTime);
+}
@@ -1,74 +1,95 @@
 package my_protocol;
 
-import framework.IRDTProtocol;
 import framework.NetworkLayer;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Utility class for the sender function in the protocol class.
  * Will receive acknowledgments sent by the "receiver" and keep track of the acknowledgements it got.
- * In the case of a window it will tell the sender once a new acknowledgement is received.
+ * Every packet that is acknowledged for the first time is passed on to the sender through its {@link AckListener},
+ * together with the other new acks that arrived in the meantime.
  *
  * @Authors Anne van den Boom (s2674475) and Lars Ran (s1403192)
  */
 public class AckReceiver implements Runnable{
 
+  // The most acks handled per wake-up, so the sender hears about acks regularly even if they keep on coming.
+  private static final int MAXBATCH = 64;
+
+  // No ack is larger than a data packet.
+  private static final int MAXACKSIZE = 256;
+
   private NetworkLayer network;
-  private boolean[] acksReceived;
-  private IRDTProtocol protocol;
-  private int lastAckReceived;
+  private AckBitmap acksReceived;
+  private AckListener listener;
   private int numberOfPackets;
-  private int acks;
+  private RttEstimator rttEstimator;
+  private CongestionController congestionController;
 
   /**
    * A constructor with all the info the receiver needs to know.
    */
-  public AckReceiver(NetworkLayer network, int numberOfPackets, IRDTProtocol protocol){
+  public AckReceiver(NetworkLayer network, int numberOfPackets, AckListener listener){
       this.network = network;
-      this.protocol = protocol;
-      acksReceived = new boolean[numberOfPackets];
+      this.listener = listener;
+      // only a window of packets can be in flight, so that is all the state that has to be kept
+      acksReceived = new AckBitmap(Math.min(numberOfPackets, SequenceNumber.WINDOW));
       this.numberOfPackets = numberOfPackets;
+      rttEstimator = new RttEstimator(acksReceived.capacity());
+      congestionController = new CongestionController(rttEstimator);
   }
 
   /**
-   * Keep on receiving acks to infinity.
+   * Keep on receiving acks until the thread is interrupted.
    */
   @Override
   public void run() {
+    // buffer to receive the acks in, reused for every ack
+    ByteBuffer packet = ByteBuffer.allocate(MAXACKSIZE);
+    int[] decoded = new int[listener.getMaxAcksPerPacket()];
+    // a batch holds at most every sequence number its acks decode to
+    int[] batch = new int[MAXBATCH * decoded.length];
     while(true){
-      Integer[] packet = network.receivePacket();
-      if(packet != null){
-        int sequenceNumber = MyProtocol.getSequenceNumber(packet);
-        // If it has not yet received this ack then add it and tell the sender to send the next.
-        if (!acksReceived[sequenceNumber]) {
-          acks++;
-          // If protocol is myprotocol it needs to send the next packet.
-          if(protocol instanceof MyProtocol){
-            ((MyProtocol) protocol).sendNextPacket();
-          }
-          if(protocol instanceof QueueProtocol){
-            ((QueueProtocol) protocol).packetQueue.remove(sequenceNumber);
-             int top = sequenceNumber;
-             if (sequenceNumber < lastAckReceived){
-               top += numberOfPackets;
-             }
-             for(int i = lastAckReceived + 1; i < top; i++){
-               if(!acksReceived[i % numberOfPackets]){
-                  for(int j = -1; j < 10/(numberOfPackets - acks); j++){
-                     ((QueueProtocol) protocol).packetQueue.addFirst(i % numberOfPackets);
-                  }
-               }
-             }
+      packet.clear();
+      // wait for the next ack, so it is processed the moment it arrives
+      boolean received;
+      try {
+        received = network.receivePacket(packet, 1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if(!received){
+        continue;
+      }
+      long arrivalTime = System.nanoTime();
+
+      // take the acks that queued up meanwhile as well, without waiting for more
+      int count = 0;
+      int acks = 0;
+      do {
+        packet.flip();
+        // The newest packet an ack acknowledges for the first time gives the round trip time sample.
+        int newest = -1;
+        int decodedCount = listener.decodeAck(packet, acksReceived.getBase(), decoded);
+        for(int i = 0; i < decodedCount; i++){
+          int sequenceNumber = decoded[i];
+          if(sequenceNumber >= 0 && sequenceNumber < numberOfPackets && acksReceived.set(sequenceNumber)){
+            batch[count++] = sequenceNumber;
+            newest = sequenceNumber;
+            System.out.println("Received ACK " + sequenceNumber);
           }
-          acksReceived[sequenceNumber] = true;
-          lastAckReceived = sequenceNumber;
         }
-        System.out.println("Received ACK " + sequenceNumber);
-      } else {
-        // wait ~10ms (or however long the OS makes us wait) before trying again
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException ignored) {
+        if(newest >= 0){
+          rttEstimator.onAck(newest, arrivalTime);
         }
+        packet.clear();
+      } while (++acks < MAXBATCH && network.receivePacket(packet));
+
+      if(count > 0){
+        congestionController.onAck(count, arrivalTime);
+        listener.onAcks(batch, count, arrivalTime);
       }
     }
   }
@@ -77,11 +98,36 @@ public class AckReceiver implements Runnable{
    * Return if the specified ack has been received by this class or not.
    */
   public boolean getAcksReceived(int sequenceNumber) {
-    return acksReceived[sequenceNumber];
+    return acksReceived.get(sequenceNumber);
+  }
+
+  /**
+   * Return the first packet that has not been acknowledged. The sender may not send packets beyond a window of
+   * getWindow() packets from it.
+   */
+  public int getFirstUnacknowledged() {
+    return acksReceived.getBase();
+  }
+
+  /**
+   * Return how many packets the sender may send from the first unacknowledged one.
+   */
+  public int getWindow() {
+    return acksReceived.capacity();
   }
 
-  public int getLastAckReceived(){
-    return lastAckReceived;
+  /**
+   * Return the round trip time estimator, which the sender should tell about every transmission.
+   */
+  public RttEstimator getRttEstimator() {
+    return rttEstimator;
+  }
+
+  /**
+   * Return the congestion controller, which grows with every new ack and should be told about losses by the sender.
+   */
+  public CongestionController getCongestionController() {
+    return congestionController;
   }
 
 }
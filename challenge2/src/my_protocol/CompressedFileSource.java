@@ -0,0 +1,113 @@
+package my_protocol;
+
+import framework.FileSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+
+/**
+ * File source that serves a compressed version of another file source, so a compressible file needs fewer packets.
+ *
+ * The file is cut into blocks of {@value #BLOCKSIZE} bytes and every block is compressed with Deflate, using the block
+ * before it as preset dictionary. A block that does not shrink is stored as is, which keeps already compressed files
+ * (such as the PNG test files) at their original size plus a few bytes of framing. Every block becomes a frame of a
+ * {@value #FRAMEHEADERSIZE} byte header, holding the method, the original length and the encoded length, followed by
+ * the encoded bytes. {@link DecompressingFileSink} reverses this on the receiving side.
+ */
+public class CompressedFileSource implements FileSource {
+
+    static final int BLOCKSIZE = 16384;
+    static final int FRAMEHEADERSIZE = 5;
+
+    // The ways a block can be encoded.
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+
+    private final byte[] frames;
+
+    private CompressedFileSource(byte[] frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * Compresses the whole file of the given source. The blocks only depend on the original bytes of the block before
+     * them, so they are compressed in parallel on the common ForkJoinPool.
+     *
+     * @param source the source to compress, which can be closed afterwards. It is read from several threads at once.
+     * @return a source of the compressed file
+     */
+    public static CompressedFileSource compress(FileSource source) {
+        int blocks = (source.size() + BLOCKSIZE - 1) / BLOCKSIZE;
+        byte[][] frames = IntStream.range(0, blocks).parallel()
+            .mapToObj(block -> compressBlock(source, block))
+            .toArray(byte[][]::new);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(source.size() + blocks * FRAMEHEADERSIZE);
+        for (byte[] frame : frames) {
+            out.write(frame, 0, frame.length);
+        }
+        return new CompressedFileSource(out.toByteArray());
+    }
+
+    /**
+     * @return the frame of the given block
+     */
+    private static byte[] compressBlock(FileSource source, int block) {
+        int offset = block * BLOCKSIZE;
+        byte[] data = new byte[BLOCKSIZE];
+        int length = source.read(offset, data, 0, BLOCKSIZE);
+        byte[] previous = null;
+        if (block > 0) {
+            previous = new byte[BLOCKSIZE];
+            source.read(offset - BLOCKSIZE, previous, 0, BLOCKSIZE);
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        byte[] encoded = new byte[BLOCKSIZE];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FRAMEHEADERSIZE + length);
+        try {
+            if (previous != null) {
+                deflater.setDictionary(previous);
+            }
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int encodedLength = deflater.deflate(encoded, 0, length);
+
+            // only keep the compressed block if it fit in fewer bytes than the block itself
+            if (deflater.finished() && encodedLength < length) {
+                writeFrame(out, DEFLATED, length, encoded, encodedLength);
+            } else {
+                writeFrame(out, STORED, length, data, length);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, byte method, int length, byte[] data, int dataLength) {
+        out.write(method);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(dataLength >>> 8);
+        out.write(dataLength);
+        out.write(data, 0, dataLength);
+    }
+
+    @Override
+    public int size() {
+        return frames.length;
+    }
+
+    @Override
+    public int read(int offset, byte[] destination, int destinationOffset, int length) {
+        int count = Math.max(0, Math.min(length, frames.length - offset));
+        System.arraycopy(frames, offset, destination, destinationOffset, count);
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
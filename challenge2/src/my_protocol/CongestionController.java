@@ -0,0 +1,123 @@
+package my_protocol;
+
+/**
+ * Congestion controller that estimates the delivery rate of the path from the acks, in the style of BBR.
+ *
+ * Losses on the challenge channel are mostly random rather than a sign of a full queue, so halving the window on every
+ * loss would keep the sender far below the slot rate of the server. Instead the controller measures how many packets
+ * are acknowledged per round trip, keeps the maximum of those samples over the last few round trips as the bottleneck
+ * rate, paces slightly faster than that rate to keep probing, and allows twice the bandwidth delay product in flight.
+ *
+ * The sender starts in a startup phase, in which the window doubles every round trip until the first rate sample is
+ * available and both gains are doubled afterwards. Startup ends at the first loss.
+ */
+public class CongestionController {
+
+    static final int INITIAL_WINDOW = 4;
+    static final int MIN_WINDOW = 4;
+    static final int MAX_WINDOW = 1024;
+
+    // How much faster than the bottleneck rate to pace, and how many bandwidth delay products to allow in flight.
+    private static final double PACING_GAIN = 1.25;
+    private static final double WINDOW_GAIN = 2;
+
+    // For how many round trips a maximum rate sample is remembered.
+    private static final int RATE_WINDOW_RTTS = 10;
+
+    // Number of recent acks remembered to take rate samples over one round trip.
+    private static final int HISTORY = 128;
+
+    private final RttEstimator rtt;
+
+    // The total number of acknowledged packets, and when and at which total recent acks arrived.
+    private long delivered;
+    private final long[] historyTimes = new long[HISTORY];
+    private final long[] historyDelivered = new long[HISTORY];
+    private int historyCount;
+
+    // The bottleneck rate in packets per second and when it was measured, 0 while unknown.
+    private double maxRate;
+    private long maxRateTime;
+
+    private boolean startup = true;
+
+    /**
+     * @param rtt the round trip time estimator of the same sender
+     */
+    public CongestionController(RttEstimator rtt) {
+        this.rtt = rtt;
+    }
+
+    /**
+     * Records newly acknowledged packets and takes a delivery rate sample over the last round trip.
+     *
+     * @param count    the number of packets acknowledged for the first time
+     * @param nanoTime the time the ack arrived, as given by System.nanoTime()
+     */
+    public synchronized void onAck(int count, long nanoTime) {
+        if (count <= 0) {
+            return;
+        }
+        delivered += count;
+        int slot = historyCount++ % HISTORY;
+        historyTimes[slot] = nanoTime;
+        historyDelivered[slot] = delivered;
+
+        if (!rtt.hasSample()) {
+            return;
+        }
+        long roundTrip = (long) (rtt.getSmoothedRtt() * 1e6);
+
+        // find the oldest remembered ack that is at most one round trip old
+        int oldest = -1;
+        for (int i = 1; i < Math.min(historyCount, HISTORY); i++) {
+            int candidate = (slot - i + HISTORY) % HISTORY;
+            if (nanoTime - historyTimes[candidate] > roundTrip) {
+                break;
+            }
+            oldest = candidate;
+        }
+        if (oldest < 0 || nanoTime - historyTimes[oldest] < 1_000_000) {
+            return;
+        }
+
+        double rate = (delivered - historyDelivered[oldest]) * 1e9 / (nanoTime - historyTimes[oldest]);
+        if (rate >= maxRate || nanoTime - maxRateTime > RATE_WINDOW_RTTS * roundTrip) {
+            maxRate = rate;
+            maxRateTime = nanoTime;
+        }
+    }
+
+    /**
+     * Records a lost packet, which ends the startup phase. Later losses do not change the window, as the delivery rate
+     * already reflects them.
+     *
+     * @param nanoTime the time the loss was detected, as given by System.nanoTime()
+     */
+    public synchronized void onLoss(long nanoTime) {
+        startup = false;
+    }
+
+    /**
+     * @return the number of packets that may be unacknowledged at a time
+     */
+    public synchronized int getWindow() {
+        if (maxRate == 0) {
+            // no rate known yet: one more packet per ack, doubling the window every round trip
+            return (int) Math.min(MAX_WINDOW, startup ? INITIAL_WINDOW + delivered : INITIAL_WINDOW);
+        }
+        double bandwidthDelayProduct = maxRate * rtt.getSmoothedRtt() / 1000;
+        double gain = startup ? 2 * WINDOW_GAIN : WINDOW_GAIN;
+        return (int) Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, Math.ceil(gain * bandwidthDelayProduct)));
+    }
+
+    /**
+     * @return the number of packets per second to send at, infinite while the delivery rate is unknown
+     */
+    public synchronized double getPacingRate() {
+        if (maxRate == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (startup ? 2 : PACING_GAIN) * maxRate;
+    }
+}
@@ -0,0 +1,142 @@
+package my_protocol;
+
+import framework.FileSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * File sink that takes the frames of a {@link CompressedFileSource} and writes the decompressed file to another sink.
+ *
+ * The compressed file has to be written in order, as the reassembly buffer of the receiver does when it flushes the
+ * part of the file without gaps. Every frame is decoded as soon as it is complete, so the decompressed file is written
+ * while the transfer is still running.
+ */
+public class DecompressingFileSink implements FileSink {
+
+    private final FileSink sink;
+
+    // The frame that is being received, and how many bytes of it are in.
+    private final byte[] frame = new byte[CompressedFileSource.FRAMEHEADERSIZE + CompressedFileSource.BLOCKSIZE];
+    private int frameLength;
+
+    // The number of compressed bytes written to this sink, and of decompressed bytes written to the underlying sink.
+    private int received;
+    private int length;
+
+    // The last decoded block, which is the dictionary of the next one.
+    private byte[] block = new byte[CompressedFileSource.BLOCKSIZE];
+    private byte[] previous = new byte[CompressedFileSource.BLOCKSIZE];
+    private int previousLength;
+
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * @param sink the sink to write the decompressed file to, which is not closed by this sink
+     */
+    public DecompressingFileSink(FileSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public synchronized void write(int offset, ByteBuffer data) throws IOException {
+        if (offset > received) {
+            throw new IOException("Compressed data must be written in order, got offset " + offset
+                + " after " + received + " bytes.");
+        }
+        // skip what was written before
+        int skip = Math.min(received - offset, data.remaining());
+        data.position(data.position() + skip);
+
+        while (data.hasRemaining()) {
+            int needed = frameLength < CompressedFileSource.FRAMEHEADERSIZE
+                ? CompressedFileSource.FRAMEHEADERSIZE - frameLength
+                : CompressedFileSource.FRAMEHEADERSIZE + getEncodedLength() - frameLength;
+            int count = Math.min(needed, data.remaining());
+            data.get(frame, frameLength, count);
+            frameLength += count;
+            received += count;
+
+            if (frameLength >= CompressedFileSource.FRAMEHEADERSIZE) {
+                if (getEncodedLength() > CompressedFileSource.BLOCKSIZE) {
+                    throw new IOException("Corrupt frame header at offset " + (received - frameLength) + ".");
+                }
+                if (frameLength == CompressedFileSource.FRAMEHEADERSIZE + getEncodedLength()) {
+                    decodeFrame();
+                    frameLength = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the complete frame and writes the block to the underlying sink.
+     */
+    private void decodeFrame() throws IOException {
+        int blockLength = (frame[1] & 0xff) << 8 | (frame[2] & 0xff);
+        int encodedLength = getEncodedLength();
+        if (blockLength > CompressedFileSource.BLOCKSIZE) {
+            throw new IOException("Corrupt frame header at offset " + (received - frameLength) + ".");
+        }
+
+        if (frame[0] == CompressedFileSource.STORED && encodedLength == blockLength) {
+            System.arraycopy(frame, CompressedFileSource.FRAMEHEADERSIZE, block, 0, blockLength);
+        } else if (frame[0] == CompressedFileSource.DEFLATED) {
+            inflater.reset();
+            if (previousLength > 0) {
+                inflater.setDictionary(previous, 0, previousLength);
+            }
+            inflater.setInput(frame, CompressedFileSource.FRAMEHEADERSIZE, encodedLength);
+            try {
+                if (inflater.inflate(block, 0, blockLength) != blockLength || !inflater.finished()) {
+                    throw new IOException("Compressed block at offset " + length + " has the wrong length.");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed block at offset " + length + ".", e);
+            }
+        } else {
+            throw new IOException("Unknown frame method " + frame[0] + ".");
+        }
+
+        sink.write(length, ByteBuffer.wrap(block, 0, blockLength));
+        length += blockLength;
+
+        byte[] swap = previous;
+        previous = block;
+        block = swap;
+        previousLength = blockLength;
+    }
+
+    private int getEncodedLength() {
+        return (frame[3] & 0xff) << 8 | (frame[4] & 0xff);
+    }
+
+    /**
+     * Checks that the compressed file ended at a frame boundary.
+     *
+     * @throws IOException if the last frame is incomplete
+     */
+    public synchronized void finish() throws IOException {
+        if (frameLength != 0) {
+            throw new IOException("Compressed file ends in the middle of a frame.");
+        }
+    }
+
+    /**
+     * @return the number of decompressed bytes written to the underlying sink
+     */
+    @Override
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * Releases the decompressor. The underlying sink stays open.
+     */
+    @Override
+    public synchronized void close() {
+        inflater.end();
+    }
+}
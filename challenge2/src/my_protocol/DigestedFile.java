@@ -0,0 +1,171 @@
+package my_protocol;
+
+import framework.FileSink;
+import framework.FileSource;
+import framework.NetworkLayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file cut into packets that each start with their {@link SequenceNumber} and end with a {@link PacketCrc}, followed
+ * by a digest packet with the length and checksum of the whole file, so the receiver can verify what it wrote.
+ *
+ * The sender builds a packet from the file every time it sends it, instead of keeping it until it is acknowledged, so
+ * it needs no memory per packet. {@link #receive} is the matching receiver, which acks every packet it accepts.
+ */
+final class DigestedFile {
+
+    private final FileSource source;
+    private final int dataSize;
+
+    // The data packets of the file, which are followed by the digest packet.
+    private final int dataPackets;
+
+    // The checksum of the file for the digest packet.
+    private final int digest;
+
+    /**
+     * Reads the whole file once to compute its checksum.
+     *
+     * @param dataSize the most bytes of the file in a packet
+     */
+    DigestedFile(FileSource source, int dataSize) {
+        this.source = source;
+        this.dataSize = dataSize;
+        dataPackets = 1 + source.size() / dataSize;
+        digest = PacketCrc.digest(source);
+    }
+
+    /**
+     * @return the number of data packets, which is also the sequence number of the digest packet
+     */
+    int getDataPackets() {
+        return dataPackets;
+    }
+
+    /**
+     * @return the number of packets to send, the digest packet included
+     */
+    int getTotalPackets() {
+        return dataPackets + 1;
+    }
+
+    /**
+     * Creates the packet with the given sequence number from the file.
+     */
+    byte[] buildPacket(int sequenceNumber) {
+        boolean isDigest = sequenceNumber == dataPackets;
+        int packetLength = isDigest ? PacketCrc.DIGESTSIZE
+            : Math.min(dataSize, source.size() - sequenceNumber * dataSize);
+
+        // create a new packet of appropriate size
+        int headerLength = SequenceNumber.getSize(sequenceNumber);
+        byte[] packet = new byte[headerLength + packetLength + PacketCrc.SIZE];
+
+        // assign the header with a sequenceNumber
+        SequenceNumber.write(packet, 0, sequenceNumber);
+
+        if (isDigest) {
+            // the digest packet carries the length and checksum of the whole file
+            ByteBuffer.wrap(packet, headerLength, packetLength).putInt(source.size()).putInt(digest);
+        } else {
+            // copy databytes from the input file into data part of the packet, i.e., after the header
+            source.read(sequenceNumber * dataSize, packet, headerLength, packetLength);
+        }
+        PacketCrc.seal(packet, headerLength + packetLength, isDigest ? PacketCrc.DIGEST : PacketCrc.DATA);
+        return packet;
+    }
+
+    /**
+     * Receives a file that a sender sends with {@link #buildPacket}, acking every packet in the receive window with its
+     * sequence number, and writes it to the sink in order.
+     *
+     * @param dataSize   the most bytes of the file in a packet, as the sender used
+     * @param packetSize the most bytes in a packet
+     * @throws IOException if the sink fails, or the file does not match the digest of the sender
+     */
+    static void receive(NetworkLayer network, FileSink sink, int dataSize, int packetSize) throws IOException {
+        System.out.println("Receiving...");
+
+        // Keep track of the received and missing packets, and of the part of the file that is complete.
+        ReassemblyBuffer reassembly = new ReassemblyBuffer(dataSize, SequenceNumber.WINDOW);
+
+        // Compute the checksum of the file while it is written, for the digest packet of the sender.
+        DigestingFileSink output = new DigestingFileSink(sink);
+
+        // The length and checksum of the file the digest packet reported, -1 for the length until it arrived.
+        int expectedLength = -1;
+        int expectedDigest = 0;
+
+        // buffer to receive the packets in, reused for every packet
+        ByteBuffer packet = ByteBuffer.allocate(packetSize);
+
+        // loop until we are done receiving the file
+        boolean stop = false;
+        while (!stop) {
+
+            // try to receive a packet from the network layer, reusing the buffer
+            packet.clear();
+
+            // wait for the next packet
+            boolean received;
+            try {
+                received = network.receivePacket(packet, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                stop = true;
+                continue;
+            }
+
+            // if we indeed received a packet
+            if (received) {
+                packet.flip();
+
+                // drop corrupted packets without an ack, the sender will send them again
+                int kind = PacketCrc.check(packet);
+                if (kind == PacketCrc.CORRUPT) {
+                    continue;
+                }
+
+                // resolve the wrapped sequence number against the first packet that is still missing
+                int wrapped = SequenceNumber.read(packet);
+                if (wrapped < 0) {
+                    continue;
+                }
+                int sequenceNumber = SequenceNumber.unwrap(wrapped, reassembly.getContiguousPackets());
+
+                // drop packets beyond the receive window without an ack, the sender will send them again
+                if (!reassembly.isInWindow(sequenceNumber)) {
+                    continue;
+                }
+
+                // send ACK
+                byte[] ack = new byte[SequenceNumber.getSize(sequenceNumber) + PacketCrc.SIZE];
+                PacketCrc.seal(ack, SequenceNumber.write(ack, 0, sequenceNumber), PacketCrc.DATA);
+                network.sendPacket(ack);
+
+                // tell the user
+                System.out.println("Received packet, length=" + packet.limit() + "  first byte=" + sequenceNumber);
+
+                if (kind == PacketCrc.DIGEST) {
+                    if (packet.remaining() == PacketCrc.DIGESTSIZE) {
+                        expectedLength = packet.getInt();
+                        expectedDigest = packet.getInt();
+                    }
+                } else if (reassembly.insert(sequenceNumber, packet)) {
+                    // store the packet's data part (excluding the header), ignoring duplicates, and write the part of
+                    // the file that is now complete up to the first gap
+                    reassembly.flushTo(output);
+                }
+
+                // Stop once all packets have been received and the file matches the digest of the sender
+                if (expectedLength >= 0 && reassembly.isComplete()) {
+                    output.verify(expectedLength, expectedDigest);
+                    System.out.println("File received.");
+                    stop = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package my_protocol;
+
+import framework.FileSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * File sink that computes the CRC32C checksum of the file while it passes it on to another sink, so the receiver can
+ * compare it with the digest packet of the sender once the file is complete.
+ *
+ * The file has to be written in order, as the reassembly buffer of the receiver does when it flushes the part of the
+ * file without gaps.
+ */
+public class DigestingFileSink implements FileSink {
+
+    private final FileSink sink;
+    private final CRC32C crc = new CRC32C();
+
+    // The number of bytes written so far.
+    private int length;
+
+    /**
+     * @param sink the sink to write the file to, which is not closed by this sink
+     */
+    public DigestingFileSink(FileSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public synchronized void write(int offset, ByteBuffer data) throws IOException {
+        if (offset != length) {
+            throw new IOException("Data must be written in order, got offset " + offset + " after " + length
+                + " bytes.");
+        }
+        length += data.remaining();
+        crc.update(data.duplicate());
+        sink.write(offset, data);
+    }
+
+    @Override
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * @return the checksum of the bytes written so far
+     */
+    public synchronized int getDigest() {
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checks the file against the length and checksum the sender reported.
+     *
+     * @throws IOException if the file differs
+     */
+    public synchronized void verify(int expectedLength, int expectedDigest) throws IOException {
+        if (length != expectedLength || getDigest() != expectedDigest) {
+            throw new IOException(String.format("Received file does not match the digest of the sender: %d bytes "
+                + "with checksum %08x, expected %d bytes with checksum %08x.", length, getDigest(), expectedLength,
+                expectedDigest));
+        }
+    }
+
+    @Override
+    public void close() {
+        // the underlying sink is closed by its owner
+    }
+}
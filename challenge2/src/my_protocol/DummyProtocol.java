@@ -4,6 +4,7 @@ import framework.IRDTProtocol;
 import framework.Utils;
 
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @version 10-07-2019
@@ -82,8 +83,13 @@ public class DummyProtocol extends IRDTProtocol {
         boolean stop = false;
         while (!stop) {
 
-            // try to receive a packet from the network layer
-            Integer[] packet = getNetworkLayer().receivePacket();
+            // wait for a packet from the network layer
+            Integer[] packet;
+            try {
+                packet = getNetworkLayer().receivePacket(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
 
             // if we indeed received a packet
             if (packet != null) {
@@ -100,13 +106,6 @@ public class DummyProtocol extends IRDTProtocol {
                 // and let's just hope the file is now complete
                 stop=true;
 
-            }else{
-                // wait ~10ms (or however long the OS makes us wait) before trying again
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    stop = true;
-                }
             }
         }
 
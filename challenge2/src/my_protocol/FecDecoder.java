@@ -0,0 +1,179 @@
+package my_protocol;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Forward error correction decoder for the parity packets of {@link FecEncoder}.
+ *
+ * For every group of packets covered by one parity packet the decoder keeps the XOR of everything that arrived. Once
+ * the parity packet and all but one of the data packets of a group are in, that XOR is exactly the missing packet.
+ * The state of a block is dropped as soon as all of its data packets are known, and parity that arrives for a block
+ * before {@link #setKnown} is ignored, so late parity does not bring a completed block back.
+ */
+public class FecDecoder {
+
+    private final int dataPackets;
+    private final int parityPackets;
+    private final int dataSize;
+
+    private final Map<Integer, Block> blocks = new HashMap<>();
+
+    // The blocks before this one have all their data packets.
+    private int knownBlocks;
+
+    // The data part of the last recovered packet.
+    private final ByteBuffer recovered;
+
+    /**
+     * @param dataPackets   the number of data packets per block
+     * @param parityPackets the number of parity packets per block
+     * @param dataSize      the maximum number of data bytes in a packet
+     */
+    public FecDecoder(int dataPackets, int parityPackets, int dataSize) {
+        this.dataPackets = dataPackets;
+        this.parityPackets = parityPackets;
+        this.dataSize = dataSize;
+        recovered = ByteBuffer.allocate(dataSize);
+    }
+
+    /**
+     * Records a data packet that was received for the first time.
+     *
+     * @param sequenceNumber the sequence number of the packet
+     * @param data           the data part of the packet, from its position up to its limit. The position is kept.
+     * @return the sequence number of a packet this allowed to recover, see {@link #getRecovered()}, or -1
+     */
+    public int onData(int sequenceNumber, ByteBuffer data) {
+        int blockNumber = sequenceNumber / dataPackets;
+        int index = sequenceNumber % dataPackets;
+        Block block = blocks.computeIfAbsent(blockNumber, b -> new Block());
+        if ((block.received & (1L << index)) != 0) {
+            return -1;
+        }
+        Group group = block.groups[index % parityPackets];
+        int length = data.remaining();
+        group.accumulator[0] ^= (byte) (length >>> 8);
+        group.accumulator[1] ^= (byte) length;
+        for (int i = 0; i < length; i++) {
+            group.accumulator[2 + i] ^= data.get(data.position() + i);
+        }
+        block.received |= 1L << index;
+        group.count++;
+
+        return tryRecover(blockNumber, block, index % parityPackets);
+    }
+
+    /**
+     * Records a parity packet.
+     *
+     * @param firstSequenceNumber the sequence number of the first packet of the block, from the header of the packet
+     * @param packet              the rest of the parity packet, from its position up to its limit
+     * @return the sequence number of a packet this allowed to recover, see {@link #getRecovered()}, or -1
+     */
+    public int onParity(int firstSequenceNumber, ByteBuffer packet) {
+        int start = packet.position();
+        if (firstSequenceNumber < 0 || firstSequenceNumber % dataPackets != 0 || packet.remaining() < 2) {
+            return -1;
+        }
+        int blockNumber = firstSequenceNumber / dataPackets;
+        int j = packet.get(start) & 0xff;
+        int count = packet.get(start + 1) & 0xff;
+        if (j >= parityPackets || count == 0 || count > dataPackets || blockNumber < knownBlocks) {
+            return -1;
+        }
+        Block block = blocks.computeIfAbsent(blockNumber, b -> new Block());
+        Group group = block.groups[j];
+        if (group.parity) {
+            return -1;
+        }
+        block.size = count;
+        group.parity = true;
+        int length = Math.min(packet.limit() - start - 2, group.accumulator.length);
+        for (int i = 0; i < length; i++) {
+            group.accumulator[i] ^= packet.get(start + 2 + i);
+        }
+        return tryRecover(blockNumber, block, j);
+    }
+
+    /**
+     * Tells the decoder that all packets before the given sequence number are known, so it ignores the parity of the
+     * blocks before it from now on.
+     */
+    public void setKnown(int sequenceNumber) {
+        knownBlocks = Math.max(knownBlocks, sequenceNumber / dataPackets);
+    }
+
+    /**
+     * @return the data part of the packet recovered by the last call that returned a sequence number. Only valid until
+     * the next call.
+     */
+    public ByteBuffer getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Rebuilds the missing packet of a group if it is the only one missing, and drops blocks that are complete.
+     */
+    private int tryRecover(int blockNumber, Block block, int j) {
+        int result = -1;
+        Group group = block.groups[j];
+        if (group.parity && group.count == groupSize(block.size, j) - 1) {
+            for (int index = j; index < block.size; index += parityPackets) {
+                if ((block.received & (1L << index)) == 0) {
+                    int length = (group.accumulator[0] & 0xff) << 8 | (group.accumulator[1] & 0xff);
+                    if (length > dataSize) {
+                        break;
+                    }
+                    recovered.clear();
+                    recovered.put(group.accumulator, 2, length);
+                    recovered.flip();
+                    block.received |= 1L << index;
+                    group.count++;
+                    result = blockNumber * dataPackets + index;
+                    break;
+                }
+            }
+        }
+
+        int size = block.size > 0 ? block.size : dataPackets;
+        if (Long.bitCount(block.received) >= size) {
+            blocks.remove(blockNumber);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of data packets covered by parity packet j in a block of the given size
+     */
+    private int groupSize(int size, int j) {
+        return j < size ? (size - 1 - j) / parityPackets + 1 : 0;
+    }
+
+    /**
+     * The decoding state of one block.
+     */
+    private class Block {
+        // The data packets of the block that are known, by index in the block.
+        long received;
+        // The number of data packets in the block, 0 until a parity packet told.
+        int size;
+        final Group[] groups = new Group[parityPackets];
+
+        Block() {
+            for (int j = 0; j < parityPackets; j++) {
+                groups[j] = new Group();
+            }
+        }
+    }
+
+    /**
+     * The packets covered by one parity packet.
+     */
+    private class Group {
+        final byte[] accumulator = new byte[2 + dataSize];
+        int count;
+        boolean parity;
+    }
+}
@@ -0,0 +1,97 @@
+package my_protocol;
+
+/**
+ * Forward error correction encoder. Splits the packets into blocks of {@code dataPackets} consecutive sequence numbers
+ * and emits {@code parityPackets} XOR parity packets per block; parity packet j covers the packets of the block whose
+ * index modulo {@code parityPackets} is j. The receiver can therefore rebuild one lost packet per parity packet, and
+ * a burst of up to {@code parityPackets} consecutive losses, without waiting for a retransmission.
+ *
+ * A parity packet starts with a header of at most {@value #MAXHEADERSIZE} bytes: the {@link SequenceNumber} of the
+ * first packet of the block, the index of the parity packet and the number of data packets in the block. The payload
+ * is the XOR of the covered packets' data parts, each prefixed with its two byte length and padded with zeros. The
+ * receiver resolves the sequence number like that of a data packet, so blocks can be numbered as far as the file goes;
+ * it has to tell parity packets apart from data packets by other means, such as the kind of their {@link PacketCrc}.
+ */
+public class FecEncoder {
+
+    static final int MAXHEADERSIZE = SequenceNumber.MAXSIZE + 2;
+
+    private final int dataPackets;
+    private final int parityPackets;
+    private final int dataSize;
+
+    // The bytes left free after every parity packet, for a checksum.
+    private final int trailerSize;
+
+    // The block being encoded, the number of packets added to it and the parity accumulated so far.
+    private int block = -1;
+    private int count;
+    private final byte[][] parity;
+
+    /**
+     * @param dataPackets   the number of data packets per block
+     * @param parityPackets the number of parity packets per block
+     * @param dataSize      the maximum number of data bytes in a packet
+     * @param trailerSize   the number of bytes to leave free at the end of every parity packet
+     */
+    public FecEncoder(int dataPackets, int parityPackets, int dataSize, int trailerSize) {
+        this.dataPackets = dataPackets;
+        this.parityPackets = parityPackets;
+        this.dataSize = dataSize;
+        this.trailerSize = trailerSize;
+        parity = new byte[parityPackets][];
+    }
+
+    /**
+     * Adds the data part of a packet to the parity of its block. Packets must be added once each, in order.
+     *
+     * @param sequenceNumber the sequence number of the packet
+     * @param data           the array holding the data part
+     * @param offset         the offset of the data part in the array
+     * @param length         the length of the data part
+     * @param last           whether this is the last packet of the file, which completes the block early
+     * @return the parity packets of the block if the packet completed it, with the trailer still free, otherwise an
+     * empty array
+     */
+    public byte[][] add(int sequenceNumber, byte[] data, int offset, int length, boolean last) {
+        int packetBlock = sequenceNumber / dataPackets;
+        if (packetBlock != block) {
+            block = packetBlock;
+            count = 0;
+            for (int j = 0; j < parityPackets; j++) {
+                parity[j] = new byte[2 + dataSize];
+            }
+        }
+
+        byte[] accumulator = parity[(sequenceNumber % dataPackets) % parityPackets];
+        accumulator[0] ^= (byte) (length >>> 8);
+        accumulator[1] ^= (byte) length;
+        for (int i = 0; i < length; i++) {
+            accumulator[2 + i] ^= data[offset + i];
+        }
+        count++;
+
+        if (count < dataPackets && !last) {
+            return new byte[0][];
+        }
+        int first = block * dataPackets;
+        int headerSize = SequenceNumber.getSize(first) + 2;
+        byte[][] packets = new byte[Math.min(parityPackets, count)][];
+        for (int j = 0; j < packets.length; j++) {
+            byte[] packet = new byte[headerSize + parity[j].length + trailerSize];
+            int sequenceNumberSize = SequenceNumber.write(packet, 0, first);
+            packet[sequenceNumberSize] = (byte) j;
+            packet[sequenceNumberSize + 1] = (byte) count;
+            System.arraycopy(parity[j], 0, packet, headerSize, parity[j].length);
+            packets[j] = packet;
+        }
+        return packets;
+    }
+
+    /**
+     * @return the largest size of a parity packet for data parts of at most the given size, without the trailer
+     */
+    public static int getPacketSize(int dataSize) {
+        return MAXHEADERSIZE + 2 + dataSize;
+    }
+}
@@ -0,0 +1,31 @@
+package my_protocol;
+
+import framework.ByteArraySink;
+import framework.IRDTProtocol;
+import framework.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A protocol that receives straight into a {@link framework.FileSink}, so {@link #receiver()} and
+ * {@link #receiveBytes()} only have to collect what {@link #receiveInto} writes.
+ */
+abstract class FileProtocol extends IRDTProtocol {
+
+    @Override
+    public Integer[] receiver() {
+        return Utils.toIntegers(receiveBytes());
+    }
+
+    @Override
+    public byte[] receiveBytes() {
+        ByteArraySink sink = new ByteArraySink();
+        try {
+            receiveInto(sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sink.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package my_protocol;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of non-negative ints, such as sequence numbers, for any number of producer threads and a
+ * single consumer thread.
+ *
+ * Producers claim a slot by advancing the tail with a compare-and-set and then publish the value by bumping the
+ * sequence of the slot (the array based queue of Dmitry Vyukov), so a full ring makes offer fail instead of block
+ * and nothing is allocated per element.
+ */
+public class IntRing {
+
+    private final int mask;
+    private final int[] values;
+
+    // For every slot, the tail position at which it can be written next, plus one once the value is published.
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // Only touched by the consumer.
+    private long head;
+
+    /**
+     * @param capacity the minimum number of values the ring can hold, rounded up to a power of two
+     */
+    public IntRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        values = new int[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a value at the tail. May be called from any thread.
+     *
+     * @param value the value, which must not be negative
+     * @return false if the ring is full
+     */
+    public boolean offer(int value) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    values[index] = value;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // the slot still holds a value from one lap ago
+                return false;
+            }
+            // another producer claimed the slot first, try the next one
+        }
+    }
+
+    /**
+     * Takes the value at the head. May only be called from the consumer thread.
+     *
+     * @return the value, or -1 if the ring is empty
+     */
+    public int poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return -1;
+        }
+        int value = values[index];
+        sequences.set(index, head + mask + 1);
+        head++;
+        return value;
+    }
+
+    /**
+     * @return the number of values the ring can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
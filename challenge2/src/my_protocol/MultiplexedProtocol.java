@@ -0,0 +1,173 @@
+package my_protocol;
+
+import framework.FileSink;
+import framework.FileSource;
+import framework.IRDTProtocol;
+import framework.MappedFileSink;
+import framework.MappedFileSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Sends several files in one simulation, each in its own stream of a {@link SessionMultiplexer} over the one network
+ * layer, with its own instance of {@link #STREAMPROTOCOL}. The stream id of a file is its file id.
+ *
+ * The file the simulation was started with is always sent as well. On the receiving side it is written to the sink of
+ * the framework, so the framework checks it as usual; the other files get output files of their own. Both sides
+ * report the aggregate throughput once all files are through. The stream of a file that is through is closed, and
+ * on the receiving side answers a sender that missed the final ack until the last file is through as well.
+ */
+public class MultiplexedProtocol extends FileProtocol {
+
+    // change the following as you wish:
+    // The files to send besides the one the simulation was started with. Must be the same on both sides.
+    static final int[] FILES = {1, 2, 3, 4, 5, 6};
+
+    // The protocol that carries every single file.
+    static final Supplier<IRDTProtocol> STREAMPROTOCOL = SelectiveRepeatProtocol::new;
+
+    @Override
+    public void sender() {
+        System.out.println("Sending...");
+        int[] files = getFiles();
+
+        // look up the sizes for the report, which also checks every file is there before anything is sent
+        long totalBytes = 0;
+        for (int file : files) {
+            try (FileSource source = MappedFileSource.open(file)) {
+                totalBytes += source.size();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+
+        SessionMultiplexer multiplexer = new SessionMultiplexer(getNetworkLayer());
+        Thread[] senders = new Thread[files.length];
+        for (int i = 0; i < files.length; i++) {
+            StreamNetworkLayer stream = multiplexer.openStream(files[i]);
+            IRDTProtocol protocol = createProtocol(stream, files[i]);
+            senders[i] = new Thread(() -> {
+                protocol.sender();
+                stream.close(false);
+            }, "Sender of file " + files[i]);
+        }
+        multiplexer.start();
+
+        long start = System.nanoTime();
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        try {
+            for (Thread sender : senders) {
+                sender.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread sender : senders) {
+                sender.interrupt();
+            }
+            return;
+        } finally {
+            multiplexer.stop();
+        }
+        report("Sent", files.length, totalBytes, System.nanoTime() - start);
+    }
+
+    @Override
+    public void TimeoutElapsed(Object tag) {
+        // every stream has a protocol with its own timers
+    }
+
+    @Override
+    public void receiveInto(FileSink sink) throws IOException {
+        System.out.println("Receiving...");
+        int[] files = getFiles();
+        long timestamp = System.currentTimeMillis();
+
+        SessionMultiplexer multiplexer = new SessionMultiplexer(getNetworkLayer());
+        FileSink[] sinks = new FileSink[files.length];
+        IOException[] failures = new IOException[files.length];
+        Thread[] receivers = new Thread[files.length];
+        try {
+            for (int i = 0; i < files.length; i++) {
+                sinks[i] = files[i] == getFileID() ? sink : MappedFileSink.create(files[i], timestamp);
+                StreamNetworkLayer stream = multiplexer.openStream(files[i]);
+                IRDTProtocol protocol = createProtocol(stream, files[i]);
+                int index = i;
+                receivers[i] = new Thread(() -> {
+                    try {
+                        protocol.receiveInto(sinks[index]);
+                        System.out.println("Received file " + files[index] + ".");
+                    } catch (IOException e) {
+                        failures[index] = e;
+                    } finally {
+                        // repeat the final ack to a sender that did not get it
+                        stream.close(true);
+                    }
+                }, "Receiver of file " + files[i]);
+            }
+            multiplexer.start();
+
+            long start = System.nanoTime();
+            for (Thread receiver : receivers) {
+                receiver.start();
+            }
+            try {
+                for (Thread receiver : receivers) {
+                    receiver.join();
+                }
+            } catch (InterruptedException e) {
+                for (Thread receiver : receivers) {
+                    receiver.interrupt();
+                }
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long totalBytes = 0;
+            for (FileSink fileSink : sinks) {
+                totalBytes += fileSink.length();
+            }
+            report("Received", files.length, totalBytes, elapsed);
+        } finally {
+            multiplexer.stop();
+            // the sink of the framework is closed by the framework
+            for (FileSink fileSink : sinks) {
+                if (fileSink != null && fileSink != sink) {
+                    fileSink.close();
+                }
+            }
+        }
+        for (IOException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the files to transfer: the one the simulation was started with, followed by FILES
+     */
+    private int[] getFiles() {
+        return IntStream.concat(IntStream.of(getFileID()), Arrays.stream(FILES)).distinct().toArray();
+    }
+
+    /**
+     * Creates the protocol that carries a file over the given stream.
+     */
+    private static IRDTProtocol createProtocol(StreamNetworkLayer stream, int file) {
+        IRDTProtocol protocol = STREAMPROTOCOL.get();
+        protocol.setNetworkLayer(stream);
+        protocol.setFileID(file);
+        return protocol;
+    }
+
+    private static void report(String verb, int files, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("%s %d files, %d bytes in %.3f s: %.0f bytes per second.",
+            verb, files, bytes, seconds, bytes / seconds));
+    }
+}
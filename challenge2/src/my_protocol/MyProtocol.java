@@ -1,11 +1,11 @@
 package my_protocol;
 
-import framework.IRDTProtocol;
-import framework.Utils;
+import framework.FileSink;
+import framework.FileSource;
+import framework.MappedFileSource;
+import framework.TimingWheel;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
 
 /**
  * @version 10-07-2019
@@ -22,97 +22,129 @@ import java.util.Set;
  *
  * @Authors Anne van den Boom (s2674475) and Lars Ran (s1403192)
  */
-public class MyProtocol extends IRDTProtocol {
+public class MyProtocol extends FileProtocol implements AckListener {
 
     // change the following as you wish:
-    static final int HEADERSIZE = 2;   // number of header bytes in each packet
+    static final int HEADERSIZE = SequenceNumber.MAXSIZE;   // max. number of header bytes in each packet
     static final int PACKETSIZE = 128; // max bytes in a packet
 
-    static final int DATASIZE = PACKETSIZE - HEADERSIZE;   // max. number of user data bytes in each packet
+    // max. number of user data bytes in each packet, which ends with a checksum
+    static final int DATASIZE = PACKETSIZE - HEADERSIZE - PacketCrc.SIZE;
 
     // How many unique packets the sender sends on the network at a time.
     static final int WINDOWSIZE = 32;
 
-    // The time to wait before sending the packet again. Not final as this is decreased later.
-    private int timeOutTime = 2000;
-    // The time between sending each packet (important as the program runs faster than transmission.
-    private final long packetInterval = 20;
-
-    // Keeping track of the packets that should be sent.
-    private Integer[][] allPackets;
+    // Keeping track of the packets that should be sent: the data packets of the file and the digest packet after them.
     private int currentPacket;
     private int totalPackets;
 
+    // The retransmission timer of every packet in the window, so it can be cancelled once the packet is acknowledged.
+    private TimingWheel.Timer[] timers;
+
     private AckReceiver receiver;
 
-    Integer[] fileContents;
+    // Decides how long to wait for an ack before sending a packet again.
+    private RttEstimator rtt;
+
+    // Decide how fast packets are handed to the network layer.
+    private CongestionController congestion;
+    private Pacer pacer;
+
+    // How many packets were sent but not acknowledged yet: at most the window, and at most the congestion window.
+    private int inFlight;
+
+    // The file that is being sent, cut into packets.
+    private DigestedFile file;
 
     @Override
     public void sender() {
         System.out.println("Sending...");
 
-        // read from the input file
-        fileContents = Utils.getFileContents(getFileID());
-
-        // declare filesize and packetNumbers
-        int filesize = fileContents.length;
-        totalPackets = 1 + (filesize / DATASIZE);
+        // map the input file, and unmap it once every packet has been acknowledged
+        try (FileSource source = MappedFileSource.open(getFileID())) {
+            send(source);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
 
-        // create a new Integer array to store all the packets
-        allPackets = new Integer[totalPackets][];
+    /**
+     * Sends the file and returns once every packet has been acknowledged.
+     */
+    private void send(FileSource source) {
+        // declare filesize and packetNumbers, the data packets are followed by the digest packet
+        int filesize = source.size();
+        file = new DigestedFile(source, DATASIZE);
+        totalPackets = file.getTotalPackets();
 
         System.out.println("Sending a file of " + filesize + " bytes divided over "
             + totalPackets + " packets.");
 
         // create a new receiver that checks for ACKs. Run in a separate thread.
         receiver = new AckReceiver(getNetworkLayer(), totalPackets, this);
+        rtt = receiver.getRttEstimator();
+        congestion = receiver.getCongestionController();
+        pacer = new Pacer(getNetworkLayer(), congestion);
+        timers = new TimingWheel.Timer[receiver.getWindow()];
         new Thread(receiver).start();
 
-        // start sending as many packets as are defined in the windowsize
-        for (int i = 0; i < WINDOWSIZE; i++) {
-            sendNextPacket();
+        try {
+            while (currentPacket < totalPackets) {
+                // wait until an ack allows another packet on the network, within the window of the first unacked one
+                synchronized (this) {
+                    while (inFlight >= Math.min(WINDOWSIZE, congestion.getWindow())
+                            || currentPacket >= receiver.getFirstUnacknowledged() + receiver.getWindow()) {
+                        wait();
+                    }
+                    inFlight++;
+                }
+                // wait for the pacer outside of the lock, so acks keep coming in meanwhile
+                pacer.acquire();
+                sendPacket(currentPacket);
+
+                // set currentPacket to the next packet
+                currentPacket++;
+            }
+
+            // retransmissions build their packets from the file, so keep it until every packet is acknowledged
+            synchronized (this) {
+                while (receiver.getFirstUnacknowledged() < totalPackets) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException ignored) {
         }
     }
 
     /**
-     * Method to send the next packet.
+     * Cancels the timers of the acknowledged packets and allows the sender to send a next packet for each of them.
+     * Never blocks.
      */
-    public synchronized void sendNextPacket(){
-        if(currentPacket < totalPackets){
-            int packetLength = Math.min(DATASIZE, fileContents.length - currentPacket * DATASIZE);
-
-            // create a new packet of appropriate size
-            Integer[] packet = new Integer[HEADERSIZE + packetLength];
-
-            // assign the header with a sequenceNumber
-            packet[0] = currentPacket / (int) Math.pow(2,8);
-            packet[1] = currentPacket % (int) Math.pow(2,8);
-
-            // copy databytes from the input file into data part of the packet, i.e., after the header
-            System.arraycopy(fileContents, currentPacket * DATASIZE, packet, HEADERSIZE, packetLength);
-
-            // send the packet to the network layer
-            getNetworkLayer().sendPacket(packet);
-            // set the timer
-            framework.Utils.Timeout.SetTimeout(timeOutTime, this, currentPacket);
-
-            // add this packet to the allPackets array
-            allPackets[currentPacket] = packet;
-
-            System.out.println("Sent one packet with header="+currentPacket);
-
-            // set currentPacket to the next packet
-            currentPacket++;
-
-            try {
-                Thread.sleep(packetInterval);
-            } catch (InterruptedException ignored) {
-            }
-        } else {
-            timeOutTime -= 50; // decrease timeOutTime when reaching the EOF
+    @Override
+    public void onAcks(int[] sequenceNumbers, int count, long nanoTime) {
+        for (int i = 0; i < count; i++) {
+            cancelTimeout(sequenceNumbers[i]);
+        }
+        synchronized (this) {
+            inFlight -= count;
+            notifyAll();
         }
     }
 
+    /**
+     * Method to send the packet with the given sequence number for the first time.
+     */
+    private void sendPacket(int sequenceNumber){
+        // send the packet to the network layer
+        getNetworkLayer().sendPacket(file.buildPacket(sequenceNumber));
+        rtt.onSend(sequenceNumber, System.nanoTime());
+        // set the timer
+        timers[sequenceNumber % timers.length] =
+            framework.Utils.Timeout.SetTimeout(rtt.getTimeout(sequenceNumber), this, sequenceNumber);
+
+        System.out.println("Sent one packet with header="+sequenceNumber);
+    }
+
 
     @Override
     public void TimeoutElapsed(Object tag) {
@@ -121,95 +153,30 @@ public class MyProtocol extends IRDTProtocol {
         if(!receiver.getAcksReceived(z)){
             // handle expiration of the timeout:
             System.out.println("Timer expired with tag="+z);
+            congestion.onLoss(System.nanoTime());
             // send the packet to the network layer
-            getNetworkLayer().sendPacket(allPackets[z]);
+            getNetworkLayer().sendPacket(file.buildPacket(z));
+            rtt.onSend(z, System.nanoTime());
             System.out.println("Sent packet " + z + " again.");
-            // schedule a new timer
-            framework.Utils.Timeout.SetTimeout(timeOutTime, this, z);
+            // schedule a new timer, backed off for every retransmission
+            timers[z % timers.length] = framework.Utils.Timeout.SetTimeout(rtt.getTimeout(z), this, z);
         }
     }
 
-    @Override
-    public Integer[] receiver() {
-        System.out.println("Receiving...");
-
-        // create the array that will contain the file contents
-        // note: we don't know yet how large the file will be, so the easiest (but not most efficient)
-        //   is to reallocate the array every time we find out there's more data
-        fileContents = new Integer[0];
-
-        // Keep track of what the maximum sequence number encountered is.
-        int maximumSequenceNumber = -1;
-        boolean maximumSequenceNumberFound = false;
-
-        // Keep track of missing packets to determine end of transmission.
-        Set<Integer> missingPackets = new HashSet();
-
-        // loop until we are done receiving the file
-        boolean stop = false;
-        while (!stop) {
-
-            // try to receive a packet from the network layer
-            Integer[] packet = getNetworkLayer().receivePacket();
-
-            // if we indeed received a packet
-            if (packet != null) {
-
-                int sequenceNumber = getSequenceNumber(packet);
-
-                // send ACK
-                getNetworkLayer().sendPacket(Arrays.copyOfRange(packet, 0, 2));
-
-                // tell the user
-                System.out.println("Received packet, length="+packet.length+"  first byte="+sequenceNumber );
-
-                // append the packet's data part (excluding the header) to the fileContents array, first making it larger
-                int datalen = packet.length - HEADERSIZE;
-
-                // if the sequenceNumber is larger than the last recorded maxSequenceNumber
-                if(sequenceNumber > maximumSequenceNumber){
-                    // add to missingPackets if it is not the sequenceNumber that is "next in line"
-                    for(int i = maximumSequenceNumber + 1; i <= sequenceNumber; i++){
-                        missingPackets.add(i);
-                    }
-
-                    // set maxSequenceNumberFound to true if packet length was smaller than set DATASIZE
-                    if(datalen < DATASIZE){
-                        maximumSequenceNumberFound = true;
-                    }
-
-                    // update maximumSequenceNumber and fileContents
-                    maximumSequenceNumber = sequenceNumber;
-                    fileContents = Arrays.copyOf(fileContents, maximumSequenceNumber  * DATASIZE + datalen);
-                }
-                // if sequenceNumber is in missingPackets, update fileContents
-                if(missingPackets.contains(sequenceNumber)){
-                    System.arraycopy(packet, HEADERSIZE, fileContents, sequenceNumber * DATASIZE , datalen);
-                }
-
-                // remove sequenceNumber from missingPackets list
-                missingPackets.remove(sequenceNumber);
-
-                // Stop if EOF is reached and all packets have been received
-                if(maximumSequenceNumberFound && missingPackets.isEmpty()){
-                    System.out.println("File received.");
-                    stop = true;
-                }
-            }else{
-                // wait ~10ms (or however long the OS makes us wait) before trying again
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    stop = true;
-                }
-            }
+    /**
+     * Cancels the retransmission timer of a packet that has been acknowledged.
+     */
+    private void cancelTimeout(int sequenceNumber) {
+        // the slot may already hold the timer of a packet one window further
+        TimingWheel.Timer timer = timers[sequenceNumber % timers.length];
+        if (timer != null && timer.getTag().equals(sequenceNumber)) {
+            timer.cancel();
         }
-        // return the output file
-        return fileContents;
     }
 
-    public static int getSequenceNumber(Integer[] packet){
-        return packet[0] * (int) Math.pow(2, 8) + packet[1];
+    @Override
+    public void receiveInto(FileSink sink) throws IOException {
+        DigestedFile.receive(getNetworkLayer(), sink, DATASIZE, PACKETSIZE);
     }
 
 }
@@ -0,0 +1,57 @@
+package my_protocol;
+
+import framework.NetworkLayer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when the sender may hand the next packet to the network layer: at the rate of the congestion controller,
+ * and only while the output buffer of the network layer is nearly empty, so the sender keeps every slot the server
+ * offers filled without piling up packets in the buffer.
+ */
+public class Pacer {
+
+    // Packets that may wait in the output buffer of the network layer for a slot from the server.
+    static final int MAX_BACKLOG = 4;
+
+    // How long to wait before looking at a full output buffer again.
+    private static final long BACKLOG_RETRY_NANOS = 1_000_000;
+
+    private final NetworkLayer network;
+    private final CongestionController controller;
+    private final TokenBucket bucket = new TokenBucket(Double.POSITIVE_INFINITY, MAX_BACKLOG);
+
+    public Pacer(NetworkLayer network, CongestionController controller) {
+        this.network = network;
+        this.controller = controller;
+    }
+
+    /**
+     * Takes permission to send one packet if it is available.
+     *
+     * @param nanoTime the current time, as given by System.nanoTime()
+     * @return 0 if the packet may be sent now, otherwise the number of nanoseconds to wait before trying again
+     */
+    public long tryAcquire(long nanoTime) {
+        if (network.getOutputBacklog() >= MAX_BACKLOG) {
+            return BACKLOG_RETRY_NANOS;
+        }
+        bucket.setRate(controller.getPacingRate());
+        return bucket.tryAcquire(nanoTime);
+    }
+
+    /**
+     * Waits until a packet may be sent. Must not be called while holding a lock other threads need.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = tryAcquire(System.nanoTime())) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
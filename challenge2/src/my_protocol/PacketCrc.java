@@ -0,0 +1,93 @@
+package my_protocol;
+
+import framework.FileSource;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Protects packets against corruption on the channel with a CRC32C trailer of {@value #SIZE} bytes, which the JVM
+ * computes with the CRC instructions of the processor where it has them.
+ *
+ * The trailer is the checksum of everything before it, big endian. A receiver drops a packet whose trailer does not
+ * match without acknowledging it, so the sender sends it again as if it was lost. The trailer of a digest packet, which
+ * carries the length and checksum of the whole file, is inverted, and the lower half of the trailer of a parity packet
+ * is; that tells them apart from a data packet without spending a header byte on every packet.
+ */
+public final class PacketCrc {
+
+    static final int SIZE = 4;
+
+    // What check returns for a packet.
+    static final int CORRUPT = -1;
+    static final int DATA = 0;
+    static final int DIGEST = 1;
+    static final int PARITY = 2;
+
+    // The size of the payload of a digest packet: the length of the file followed by its checksum.
+    static final int DIGESTSIZE = 8;
+
+    private static final int DIGESTMARK = 0xffffffff;
+    private static final int PARITYMARK = 0x0000ffff;
+
+    // The size of the chunks a file is read in to compute its checksum.
+    private static final int CHUNKSIZE = 65536;
+
+    private PacketCrc() {
+    }
+
+    /**
+     * Writes the trailer of a packet.
+     *
+     * @param packet the packet, with room for the trailer after its contents
+     * @param length the length of the contents, where the trailer is written
+     * @param kind   DATA, DIGEST or PARITY
+     */
+    public static void seal(byte[] packet, int length, int kind) {
+        CRC32C crc = new CRC32C();
+        crc.update(packet, 0, length);
+        int value = (int) crc.getValue();
+        if (kind == DIGEST) {
+            value ^= DIGESTMARK;
+        } else if (kind == PARITY) {
+            value ^= PARITYMARK;
+        }
+        ByteBuffer.wrap(packet, length, SIZE).putInt(value);
+    }
+
+    /**
+     * Checks the trailer of a packet and, if it matches, removes it by moving the limit of the buffer back.
+     *
+     * @param packet the packet, from position 0 up to its limit. The position is not changed.
+     * @return DATA, DIGEST or PARITY if the trailer matches, otherwise CORRUPT
+     */
+    public static int check(ByteBuffer packet) {
+        int length = packet.limit() - SIZE;
+        if (length < 0) {
+            return CORRUPT;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(packet.duplicate().position(0).limit(length));
+        int value = (int) crc.getValue();
+        int trailer = packet.getInt(length);
+        int kind = trailer == value ? DATA : trailer == (value ^ DIGESTMARK) ? DIGEST
+            : trailer == (value ^ PARITYMARK) ? PARITY : CORRUPT;
+        if (kind != CORRUPT) {
+            packet.limit(length);
+        }
+        return kind;
+    }
+
+    /**
+     * @return the CRC32C checksum of the whole file
+     */
+    public static int digest(FileSource source) {
+        CRC32C crc = new CRC32C();
+        byte[] chunk = new byte[CHUNKSIZE];
+        for (int offset = 0; offset < source.size(); offset += CHUNKSIZE) {
+            int length = source.read(offset, chunk, 0, CHUNKSIZE);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+}
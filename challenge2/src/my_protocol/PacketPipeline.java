@@ -0,0 +1,102 @@
+package my_protocol;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+/**
+ * Prepares the packets of a sender ahead of time on a ForkJoinPool, so the CPU work per packet (reading the file,
+ * computing parity) runs in parallel on all cores and not on the thread that paces the transmissions.
+ *
+ * The work is cut into units numbered from 0, such as a batch of consecutive packets, which are prepared by a single
+ * task each so the overhead of a task is shared by several packets. At most {@code depth} units are being prepared or
+ * ready at a time: a new one is only started when the sender takes one, which bounds the memory to a few units no
+ * matter how large the file is. Units are handed out in order, whatever order the pool finishes them in.
+ *
+ * @param <T> the result of preparing a unit
+ */
+public class PacketPipeline<T> {
+
+    private final IntFunction<T> stage;
+    private final int units;
+    private final ForkJoinPool pool;
+
+    // The units that are being prepared or ready, round robin by unit number.
+    private final ForkJoinTask<T>[] ready;
+
+    // The next unit to hand out. Only used by the thread that takes the units.
+    private int next;
+
+    /**
+     * Starts preparing the first units.
+     *
+     * @param units the number of units
+     * @param depth the most units to prepare ahead of the one that is taken next
+     * @param stage prepares the unit with the given number; called on the threads of the pool
+     * @param pool  the pool to prepare the units on
+     */
+    @SuppressWarnings("unchecked")
+    public PacketPipeline(int units, int depth, IntFunction<T> stage, ForkJoinPool pool) {
+        this.stage = stage;
+        this.units = units;
+        this.pool = pool;
+        ready = (ForkJoinTask<T>[]) new ForkJoinTask<?>[Math.max(depth, 1)];
+        for (int unit = 0; unit < Math.min(ready.length, units); unit++) {
+            prepare(unit);
+        }
+    }
+
+    /**
+     * @return whether there are units left to take
+     */
+    public boolean hasNext() {
+        return next < units;
+    }
+
+    /**
+     * Takes the next unit, waiting until it is ready, and starts preparing the next one.
+     *
+     * @return the prepared unit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int slot = next % ready.length;
+        T result;
+        try {
+            result = ready[slot].get();
+        } catch (ExecutionException e) {
+            // preparing a unit only fails on a bug, pass it on as it was thrown
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+        ready[slot] = null;
+        if (next + ready.length < units) {
+            prepare(next + ready.length);
+        }
+        next++;
+        return result;
+    }
+
+    /**
+     * Stops preparing the units that were not taken yet.
+     */
+    public void cancel() {
+        for (ForkJoinTask<T> task : ready) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private void prepare(int unit) {
+        ready[unit % ready.length] = pool.submit(() -> stage.apply(unit));
+    }
+}
@@ -2,8 +2,8 @@ package my_protocol;
 
 import framework.DRDTChallengeClient;
 import framework.IRDTProtocol;
+import framework.MappedFileSink;
 import framework.NetworkLayer;
-import framework.Utils;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,15 +24,15 @@ public class Program {
     // Sizes in bytes are: 248, 2085, 6267, 21067, 53228, 141270
     private static int file = 6;
 
-    // Change to your protocol implementation
-    private static IRDTProtocol protocolImpl = new QueueProtocol();
+    // Change to your protocol implementation, for example to new MultiplexedProtocol() to send several files at once
+    private static IRDTProtocol protocolImpl = new SelectiveRepeatProtocol();
 
-    // Challenge server address
+    // Challenge server address, overridden by -Dchallenge.server (use localhost for the simulator package)
     // See the website for the hostname of the server
-    private static String serverAddress = "networkingchallenges.ewi.utwente.nl";
+    private static String serverAddress = System.getProperty("challenge.server", "networkingchallenges.ewi.utwente.nl");
 
-    // Challenge server port
-    private static int serverPort = 8002;
+    // Challenge server port, overridden by -Dchallenge.port
+    private static int serverPort = Integer.getInteger("challenge.port", 8002);
 
     // *                                                          *
     // **                                                        **
@@ -83,8 +83,9 @@ public class Program {
                     sender.start();
                 } else {
                     System.out.println("[FRAMEWORK] Running protocol implementation as receiver...");
-                    Integer[] fileContents = protocolImpl.receiver();
-                    Utils.setFileContents(fileContents, client.getFileID(), timestamp);
+                    try (MappedFileSink sink = MappedFileSink.create(client.getFileID(), timestamp)) {
+                        protocolImpl.receiveInto(sink);
+                    }
                     client.sendChecksumOut(timestamp);
                 }
             }
@@ -1,13 +1,12 @@
 package my_protocol;
 
-import framework.IRDTProtocol;
-import framework.Utils;
+import framework.FileSink;
+import framework.FileSource;
+import framework.MappedFileSource;
 
-import java.util.ArrayDeque;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Queue;
-import java.util.Set;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @version 10-07-2019
@@ -24,187 +23,271 @@ import java.util.Set;
  *
  * @Authors Anne van den Boom (s2674475) and Lars Ran (s1403192)
  */
-public class QueueProtocol extends IRDTProtocol {
+public class QueueProtocol extends FileProtocol implements AckListener {
 
   // change the following as you wish:
-  static final int HEADERSIZE = 2;   // number of header bytes in each packet
+  static final int HEADERSIZE = SequenceNumber.MAXSIZE;   // max. number of header bytes in each packet
   static final int PACKETSIZE = 200; // max bytes in a packet
 
-  static final int DATASIZE = PACKETSIZE - HEADERSIZE;   // max. number of user data bytes in each packet
+  // max. number of user data bytes in each packet, which ends with a checksum
+  static final int DATASIZE = PACKETSIZE - HEADERSIZE - PacketCrc.SIZE;
 
-  // The time between sending each packet (important as the program runs faster than transmission.
-  private long packetInterval = 50;
+  // New packets are built ahead of the sender in batches of PIPELINEBATCH packets, at most PIPELINEDEPTH batches ahead.
+  static final int PIPELINEBATCH = 16;
+  static final int PIPELINEDEPTH = 8;
 
-  // Keeping track of the packets that should be sent.
-  private Integer[][] allPackets;
+  // Keeping track of the packets that should be sent: the data packets of the file and the digest packet after them.
   private int totalPackets;
 
   private AckReceiver receiver;
 
-  Integer[] fileContents;
+  // Decides how long to wait for an ack before sending a packet again.
+  private RttEstimator rtt;
 
-  public ArrayDeque<Integer> packetQueue;
+  // Decide how fast packets are handed to the network layer.
+  private CongestionController congestion;
+  private Pacer pacer;
+
+  // The file that is being sent, cut into packets.
+  private DigestedFile file;
+
+  // The unacknowledged packets in the order they were sent, each one once. Only used by the sender thread; packets
+  // that were acknowledged in the meantime are skipped when they come up, so an ack never has to search it.
+  // Bounded by the window, see addPending.
+  private IntRing pendingPackets;
+
+  // Packets the ack thread found to be missing, which go before the pending ones.
+  private IntRing retransmissions;
+
+  // The highest packet that was acknowledged, -1 if none. Only used by the ack thread.
+  private int lastAckReceived = -1;
+
+  // The packets that were sent but not acknowledged yet, which the congestion window bounds, and the number of batches
+  // of acks handled, so the sender can tell whether one came in while it looked for work. Guarded by this.
+  private int inFlight;
+  private long ackBatches;
 
   @Override
   public void sender() {
     System.out.println("Sending...");
 
-    // read from the input file
-    fileContents = Utils.getFileContents(getFileID());
-
-    // declare filesize and packetNumbers
-    int filesize = fileContents.length;
-    totalPackets = 1 + (filesize / DATASIZE);
+    // map the input file, and unmap it once every packet has been acknowledged
+    try (FileSource source = MappedFileSource.open(getFileID())) {
+      send(source);
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+    }
+  }
 
-    // create a new Integer array to store all the packets
-    allPackets = new Integer[totalPackets][];
+  /**
+   * Sends the file and returns once every packet has been acknowledged.
+   */
+  private void send(FileSource source) {
+    // declare filesize and packetNumbers, the data packets are followed by the digest packet
+    int filesize = source.size();
+    file = new DigestedFile(source, DATASIZE);
+    totalPackets = file.getTotalPackets();
 
     System.out.println("Sending a file of " + filesize + " bytes divided over "
         + totalPackets + " packets.");
 
-    packetQueue = new ArrayDeque<>();
-
     // create a new receiver that checks for ACKs. Run in a separate thread.
     receiver = new AckReceiver(getNetworkLayer(), totalPackets, this);
-    new Thread(receiver).start();
+    rtt = receiver.getRttEstimator();
+    congestion = receiver.getCongestionController();
+    pacer = new Pacer(getNetworkLayer(), congestion);
 
-    // Send all packets once first and save them to an array.
-    for(int i = 0; i < totalPackets; i++){
-      int packetLength = Math.min(DATASIZE, filesize - i * DATASIZE);
-
-      // create a new packet of appropriate size
-      Integer[] packet = new Integer[HEADERSIZE + packetLength];
-
-      // assign the header with a sequenceNumber
-      packet[0] = i / (int) Math.pow(2,8);
-      packet[1] = i % (int) Math.pow(2,8);
-
-      // copy databytes from the input file into data part of the packet, i.e., after the header
-      System.arraycopy(fileContents, i * DATASIZE, packet, HEADERSIZE, packetLength);
+    // only the packets in the window can be unacknowledged, plus the one that is being added
+    pendingPackets = new IntRing(receiver.getWindow() + 1);
+    retransmissions = new IntRing(receiver.getWindow());
+    new Thread(receiver).start();
 
-      // send the packet to the network layer
-      getNetworkLayer().sendPacket(packet);
-      packetQueue.add(i);
+    // build the first transmission of every packet on the common pool, so the loop below only has to send them
+    int batches = (totalPackets + PIPELINEBATCH - 1) / PIPELINEBATCH;
+    PacketPipeline<byte[][]> pipeline = new PacketPipeline<>(batches, PIPELINEDEPTH, this::buildBatch,
+        ForkJoinPool.commonPool());
+    try {
+      sendAll(pipeline);
+    } finally {
+      pipeline.cancel();
+    }
+  }
 
-      // add this packet to the allPackets array
-      allPackets[i] = packet;
+  private void sendAll(PacketPipeline<byte[][]> pipeline) {
+    // Send every packet once as soon as the windows allow it. In between, keep on sending unacknowledged packets until
+    // all are acknowledged, once their retransmission timeout has elapsed. With nothing to do, wait for the next ack or
+    // the timeout of the packet at the head of the pending ones, whichever comes first.
+    // The first packet that has not been sent yet, and the pending packet at the head that is not due yet, -1 if none.
+    int nextPacket = 0;
+    int waiting = -1;
+    // the batch of new packets nextPacket is in
+    byte[][] batch = null;
+    while(true){
+      // any ack handled from here on wakes the wait below
+      long acks;
+      int unacknowledged;
+      synchronized (this) {
+        acks = ackBatches;
+        unacknowledged = inFlight;
+      }
 
-      System.out.println("Sent one packet with header="+i);
+      if(nextPacket < totalPackets && nextPacket < receiver.getFirstUnacknowledged() + receiver.getWindow()
+          && unacknowledged < congestion.getWindow()){
+        // wait until the pacer allows the next packet, then send it to the network layer
+        try {
+          if(nextPacket % PIPELINEBATCH == 0){
+            batch = pipeline.take();
+          }
+          pacer.acquire();
+        } catch (InterruptedException e) {
+          return;
+        }
+        getNetworkLayer().sendPacket(batch[nextPacket % PIPELINEBATCH]);
+        rtt.onSend(nextPacket, System.nanoTime());
+        synchronized (this) {
+          inFlight++;
+        }
+        addPending(nextPacket);
 
-      try {
-        Thread.sleep(packetInterval);
-      } catch (InterruptedException ignored) {
+        System.out.println("Sent one packet with header="+nextPacket);
+        nextPacket++;
+        continue;
       }
-    }
 
-    // Keep on sending unacknowledged packets until infinity.
-    while(true){
-      if(!packetQueue.isEmpty()){
-        int sequenceNumber = packetQueue.poll();
-        if(!receiver.getAcksReceived(sequenceNumber)){
-          getNetworkLayer().sendPacket(allPackets[sequenceNumber]);
-          packetQueue.add(sequenceNumber);
-          System.out.println("Sent packet " + sequenceNumber + " again on queue.");
-          try {
-            Thread.sleep(packetInterval);
-          } catch (InterruptedException ignored) {
-          }
+      // packets reported missing go first, but only once they are due; otherwise their pending entry covers them
+      int sequenceNumber = retransmissions.poll();
+      boolean reported = sequenceNumber >= 0;
+      if(!reported){
+        sequenceNumber = waiting >= 0 ? waiting : pendingPackets.poll();
+        waiting = -1;
+      }
+      if(sequenceNumber < 0 && nextPacket >= totalPackets){
+        // every packet has been acknowledged
+        break;
+      }
+      if(sequenceNumber >= 0 && (sequenceNumber >= nextPacket || receiver.getAcksReceived(sequenceNumber))){
+        continue;
+      }
+      if(sequenceNumber < 0 || !rtt.isExpired(sequenceNumber, System.nanoTime())){
+        if(reported){
+          continue;
+        }
+        // the windows are full and the ack that moves them is being processed, or the ack of the head may still be
+        // on its way: wait for an ack, or until the head is due
+        long deadline = Long.MAX_VALUE;
+        if(sequenceNumber >= 0){
+          waiting = sequenceNumber;
+          deadline = rtt.getExpiry(sequenceNumber);
         }
-      }else{
         try {
-          Thread.sleep(10);
-        } catch (InterruptedException ignored) {
+          awaitAck(acks, deadline);
+        } catch (InterruptedException e) {
+          return;
         }
+        continue;
+      }
+      congestion.onLoss(System.nanoTime());
+      try {
+        pacer.acquire();
+      } catch (InterruptedException e) {
+        return;
+      }
+      getNetworkLayer().sendPacket(file.buildPacket(sequenceNumber));
+      rtt.onSend(sequenceNumber, System.nanoTime());
+      if(!reported){
+        addPending(sequenceNumber);
       }
+      System.out.println("Sent packet " + sequenceNumber + " again on queue.");
     }
+    System.out.println("File sent.");
   }
 
-  @Override
-  public void TimeoutElapsed(Object tag) {
-
+  /**
+   * Blocks until an ack is handled after the given number of batches, or until the deadline.
+   *
+   * @param acks     the number of batches of acks handled when the sender last looked for work
+   * @param deadline the time to stop waiting, as given by System.nanoTime(), Long.MAX_VALUE for none
+   */
+  private synchronized void awaitAck(long acks, long deadline) throws InterruptedException {
+    while(ackBatches == acks){
+      if(deadline == Long.MAX_VALUE){
+        wait();
+        continue;
+      }
+      long remaining = deadline - System.nanoTime();
+      if(remaining <= 0){
+        return;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
   }
 
-  @Override
-  public Integer[] receiver() {
-    System.out.println("Receiving...");
-
-    // create the array that will contain the file contents
-    // note: we don't know yet how large the file will be, so the easiest (but not most efficient)
-    //   is to reallocate the array every time we find out there's more data
-    fileContents = new Integer[0];
-
-    // Keep track of what the maximum sequence number encountered is.
-    int maximumSequenceNumber = -1;
-    boolean maximumSequenceNumberFound = false;
-
-    // Keep track of missing packets to determine end of transmission.
-    Set<Integer> missingPackets = new HashSet();
-
-    // loop until we are done receiving the file
-    boolean stop = false;
-    while (!stop) {
-
-      // try to receive a packet from the network layer
-      Integer[] packet = getNetworkLayer().receivePacket();
-
-      // if we indeed received a packet
-      if (packet != null) {
-
-        int sequenceNumber = getSequenceNumber(packet);
-
-        // send ACK
-        getNetworkLayer().sendPacket(Arrays.copyOfRange(packet, 0, 2));
-
-        // tell the user
-        System.out.println("Received packet, length="+packet.length+"  first byte="+sequenceNumber );
-
-        // append the packet's data part (excluding the header) to the fileContents array, first making it larger
-        int datalen = packet.length - HEADERSIZE;
-
-        // if the sequenceNumber is larger than the last recorded maxSequenceNumber
-        if(sequenceNumber > maximumSequenceNumber){
-          // add to missingPackets if it is not the sequenceNumber that is "next in line"
-          for(int i = maximumSequenceNumber + 1; i <= sequenceNumber; i++){
-            missingPackets.add(i);
-          }
-
-          // set maxSequenceNumberFound to true if packet length was smaller than set DATASIZE
-          if(datalen < DATASIZE){
-            maximumSequenceNumberFound = true;
-          }
-
-          // update maximumSequenceNumber and fileContents
-          maximumSequenceNumber = sequenceNumber;
-          fileContents = Arrays.copyOf(fileContents, maximumSequenceNumber  * DATASIZE + datalen);
-        }
-        // if missingPacket
-        if(missingPackets.contains(sequenceNumber)){
-          System.arraycopy(packet, HEADERSIZE, fileContents, sequenceNumber * DATASIZE , datalen);
-        }
+  /**
+   * Creates the packets of a batch of the pipeline. Called on the threads of the pool.
+   */
+  private byte[][] buildBatch(int batch){
+    int first = batch * PIPELINEBATCH;
+    byte[][] packets = new byte[Math.min(PIPELINEBATCH, totalPackets - first)][];
+    for(int i = 0; i < packets.length; i++){
+      packets[i] = file.buildPacket(first + i);
+    }
+    return packets;
+  }
 
-        // remove sequenceNumber from missingPackets list
-        missingPackets.remove(sequenceNumber);
+  /**
+   * Adds a packet to the pending ones. If there is no room, the packets that were acknowledged meanwhile are dropped
+   * first, which always makes room because only the packets in the window can be unacknowledged.
+   */
+  private void addPending(int sequenceNumber) {
+    if(pendingPackets.offer(sequenceNumber)){
+      return;
+    }
+    for(int i = pendingPackets.capacity(); i > 0; i--){
+      int pending = pendingPackets.poll();
+      if(pending >= 0 && !receiver.getAcksReceived(pending)){
+        pendingPackets.offer(pending);
+      }
+    }
+    pendingPackets.offer(sequenceNumber);
+  }
 
-        // Stop if EOF is reached and all packets have been received
-        if(maximumSequenceNumberFound && missingPackets.isEmpty()){
-          System.out.println("File received.");
-          stop = true;
-        }
-      }else{
-        // wait ~10ms (or however long the OS makes us wait) before trying again
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          stop = true;
+  /**
+   * The packets an ack skipped over are probably lost, so they are handed to the sender to go first once their
+   * timeout has elapsed. Acks below the highest one so far, such as those of retransmissions, skip nothing new. Only
+   * the window can hold unacknowledged packets, so the scan ends there. A request is dropped if too many are
+   * outstanding. Wakes up the sender, as the windows moved.
+   */
+  @Override
+  public void onAcks(int[] sequenceNumbers, int count, long nanoTime) {
+    for(int j = 0; j < count; j++){
+      int sequenceNumber = sequenceNumbers[j];
+      if (sequenceNumber <= lastAckReceived){
+        continue;
+      }
+      int first = receiver.getFirstUnacknowledged();
+      int top = Math.min(sequenceNumber, first + receiver.getWindow());
+      for(int i = Math.max(lastAckReceived + 1, first); i < top; i++){
+        if(!receiver.getAcksReceived(i)){
+          retransmissions.offer(i);
         }
       }
+      lastAckReceived = sequenceNumber;
+    }
+    synchronized (this) {
+      inFlight -= count;
+      ackBatches++;
+      notifyAll();
     }
-    // return the output file
-    return fileContents;
   }
 
-  public static int getSequenceNumber(Integer[] packet){
-    return packet[0] * (int) Math.pow(2, 8) + packet[1];
+  @Override
+  public void TimeoutElapsed(Object tag) {
+
+  }
+
+  @Override
+  public void receiveInto(FileSink sink) throws IOException {
+    DigestedFile.receive(getNetworkLayer(), sink, DATASIZE, PACKETSIZE);
   }
 
 }
@@ -0,0 +1,149 @@
+package my_protocol;
+
+import framework.FileSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Collects the data parts of packets that may arrive out of order and in duplicate, and hands the completed prefix of
+ * the file to a sink as soon as it has no gaps.
+ *
+ * Data is stored in segments of {@value #PACKETS_PER_SEGMENT} packets that are allocated when the first packet of the
+ * segment arrives and released once the segment has been flushed, so inserting a packet never copies earlier data.
+ * Only a window of segments from the first one that is not completely flushed is kept, in a ring with one word of
+ * received bits per segment, so the memory use is bounded by the window and not by the size of the file. Packets
+ * beyond the window are refused.
+ */
+public class ReassemblyBuffer {
+
+    static final int PACKETS_PER_SEGMENT = 64;
+
+    // The number of data bytes in every packet but the last.
+    private final int dataSize;
+
+    // The segments in the window and their received packets, one bit per packet, indexed round robin.
+    private final byte[][] segments;
+    private final long[] received;
+
+    // The sequence number of the last packet of the file (the first one with less than dataSize bytes), -1 if unknown.
+    private int lastSequenceNumber = -1;
+    private int lastDataLength;
+
+    // The number of packets received without gaps, and how many of those have been written to the sink.
+    private int contiguous;
+    private int flushed;
+
+    /**
+     * @param dataSize the number of data bytes in every packet but the last
+     * @param window   the minimum number of packets after the first one that is not flushed that can be buffered
+     */
+    public ReassemblyBuffer(int dataSize, int window) {
+        this.dataSize = dataSize;
+        int count = (Math.max(window, 1) + PACKETS_PER_SEGMENT - 1) / PACKETS_PER_SEGMENT + 1;
+        segments = new byte[count][];
+        received = new long[count];
+    }
+
+    /**
+     * Stores the data part of a packet.
+     *
+     * @param sequenceNumber the sequence number of the packet
+     * @param data           the data part of the packet, from its position up to its limit
+     * @return true if the packet had not been received before and fits in the window
+     */
+    public boolean insert(int sequenceNumber, ByteBuffer data) {
+        if (!isInWindow(sequenceNumber) || isReceived(sequenceNumber)) {
+            return false;
+        }
+        int datalen = data.remaining();
+        if (datalen < dataSize) {
+            lastSequenceNumber = sequenceNumber;
+            lastDataLength = datalen;
+        }
+
+        int segment = getSlot(sequenceNumber);
+        if (segments[segment] == null) {
+            segments[segment] = new byte[PACKETS_PER_SEGMENT * dataSize];
+        }
+        data.get(segments[segment], (sequenceNumber % PACKETS_PER_SEGMENT) * dataSize, datalen);
+
+        received[segment] |= 1L << sequenceNumber;
+        if (sequenceNumber == contiguous) {
+            contiguous = nextMissing(contiguous);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the packets that have been received without gaps, and were not written before, to the sink, and releases
+     * the segments that are completely written.
+     *
+     * @param sink the sink to write to
+     * @throws IOException if writing to the sink failed
+     */
+    public void flushTo(FileSink sink) throws IOException {
+        while (flushed < contiguous) {
+            int segment = getSlot(flushed);
+            int first = flushed % PACKETS_PER_SEGMENT;
+            int end = Math.min(contiguous, flushed - first + PACKETS_PER_SEGMENT);
+
+            int length = (end - flushed) * dataSize;
+            if (end - 1 == lastSequenceNumber) {
+                length -= dataSize - lastDataLength;
+            }
+            sink.write(flushed * dataSize, ByteBuffer.wrap(segments[segment], first * dataSize, length));
+
+            flushed = end;
+            if (flushed % PACKETS_PER_SEGMENT == 0 || flushed - 1 == lastSequenceNumber) {
+                segments[segment] = null;
+                received[segment] = 0;
+            }
+        }
+    }
+
+    /**
+     * @return whether every packet up to and including the last one of the file has been received
+     */
+    public boolean isComplete() {
+        return lastSequenceNumber >= 0 && contiguous > lastSequenceNumber;
+    }
+
+    /**
+     * @return the number of packets received without gaps from the start of the file
+     */
+    public int getContiguousPackets() {
+        return contiguous;
+    }
+
+    /**
+     * @return the first sequence number at or after the given one that has not been received
+     */
+    public int nextMissing(int sequenceNumber) {
+        while (isReceived(sequenceNumber)) {
+            sequenceNumber++;
+        }
+        return sequenceNumber;
+    }
+
+    /**
+     * @return whether the packet with the given sequence number has been received
+     */
+    public boolean isReceived(int sequenceNumber) {
+        return sequenceNumber < flushed
+                || isInWindow(sequenceNumber) && (received[getSlot(sequenceNumber)] & 1L << sequenceNumber) != 0;
+    }
+
+    /**
+     * @return whether the packet with the given sequence number is flushed or can be buffered. A packet beyond the
+     * window should not be acknowledged, so the sender sends it again later.
+     */
+    public boolean isInWindow(int sequenceNumber) {
+        int start = flushed - flushed % PACKETS_PER_SEGMENT;
+        return sequenceNumber < start + segments.length * PACKETS_PER_SEGMENT;
+    }
+
+    private int getSlot(int sequenceNumber) {
+        return sequenceNumber / PACKETS_PER_SEGMENT % segments.length;
+    }
+}
@@ -0,0 +1,138 @@
+package my_protocol;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the round trip time from send and ack timestamps and derives the retransmission timeout from it, as
+ * described by Jacobson and Karels (RFC 6298).
+ *
+ * Samples are only taken from packets that were transmitted once (Karn's rule), because the ack of a retransmitted
+ * packet cannot be matched to a transmission. Every retransmission of a packet doubles the timeout of that packet,
+ * until a fresh sample shows the path is fine again.
+ */
+public class RttEstimator {
+
+    // Gains of the smoothed round trip time and its variation, and the weight of the variation in the timeout.
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final int K = 4;
+
+    // Bounds on the timeout in milliseconds.
+    static final long INITIAL_TIMEOUT = 1000;
+    static final long MIN_TIMEOUT = 50;
+    static final long MAX_TIMEOUT = 10000;
+
+    // The smoothed round trip time and round trip time variation in milliseconds.
+    private double srtt;
+    private double rttvar;
+    private boolean hasSample = false;
+    private long timeout = INITIAL_TIMEOUT;
+
+    // The time of the last transmission of every packet in flight, and how often it has been transmitted. Packets
+    // share a slot round robin, which holds the sequence number of the packet it was last used for.
+    private final int[] sequenceNumbers;
+    private final long[] sendTimes;
+    private final int[] transmissions;
+
+    /**
+     * @param capacity the most packets that can be in flight at a time, counted from the first unacknowledged one
+     */
+    public RttEstimator(int capacity) {
+        sequenceNumbers = new int[capacity];
+        Arrays.fill(sequenceNumbers, -1);
+        sendTimes = new long[capacity];
+        transmissions = new int[capacity];
+    }
+
+    /**
+     * Records the transmission of a packet.
+     *
+     * @param sequenceNumber the sequence number of the packet
+     * @param nanoTime       the time of the transmission, as given by System.nanoTime()
+     */
+    public synchronized void onSend(int sequenceNumber, long nanoTime) {
+        int slot = sequenceNumber % sendTimes.length;
+        if (sequenceNumbers[slot] != sequenceNumber) {
+            sequenceNumbers[slot] = sequenceNumber;
+            transmissions[slot] = 0;
+        }
+        sendTimes[slot] = nanoTime;
+        transmissions[slot]++;
+    }
+
+    /**
+     * Records the ack of a packet and updates the estimate if the packet was transmitted only once.
+     *
+     * @param sequenceNumber the sequence number of the acknowledged packet
+     * @param nanoTime       the time the ack arrived, as given by System.nanoTime()
+     */
+    public synchronized void onAck(int sequenceNumber, long nanoTime) {
+        if (getTransmissions(sequenceNumber) != 1) {
+            return;
+        }
+        double sample = (nanoTime - sendTimes[sequenceNumber % sendTimes.length]) / 1e6;
+        if (!hasSample) {
+            srtt = sample;
+            rttvar = sample / 2;
+            hasSample = true;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - sample);
+            srtt = (1 - ALPHA) * srtt + ALPHA * sample;
+        }
+        timeout = Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, (long) Math.ceil(srtt + K * rttvar)));
+    }
+
+    /**
+     * @return the retransmission timeout in milliseconds for a packet that has not been retransmitted
+     */
+    public synchronized long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the retransmission timeout in milliseconds for the given packet, backed off exponentially for every
+     * time it has been retransmitted
+     */
+    public synchronized long getTimeout(int sequenceNumber) {
+        int backoff = Math.min(Math.max(getTransmissions(sequenceNumber) - 1, 0), 16);
+        return Math.min(MAX_TIMEOUT, timeout << backoff);
+    }
+
+    /**
+     * @return whether the retransmission timeout of the given packet has elapsed since its last transmission
+     */
+    public synchronized boolean isExpired(int sequenceNumber, long nanoTime) {
+        return getTransmissions(sequenceNumber) == 0
+                || nanoTime - sendTimes[sequenceNumber % sendTimes.length] >= getTimeout(sequenceNumber) * 1_000_000;
+    }
+
+    /**
+     * @return the time the retransmission timeout of the given packet elapses, as given by System.nanoTime(), or
+     * Long.MIN_VALUE if the packet has not been transmitted
+     */
+    public synchronized long getExpiry(int sequenceNumber) {
+        if (getTransmissions(sequenceNumber) == 0) {
+            return Long.MIN_VALUE;
+        }
+        return sendTimes[sequenceNumber % sendTimes.length] + getTimeout(sequenceNumber) * 1_000_000;
+    }
+
+    /**
+     * @return whether a round trip time sample was taken yet
+     */
+    public synchronized boolean hasSample() {
+        return hasSample;
+    }
+
+    /**
+     * @return the smoothed round trip time in milliseconds, or the initial timeout if no sample was taken yet
+     */
+    public synchronized double getSmoothedRtt() {
+        return hasSample ? srtt : INITIAL_TIMEOUT;
+    }
+
+    private int getTransmissions(int sequenceNumber) {
+        int slot = sequenceNumber % sendTimes.length;
+        return sequenceNumbers[slot] == sequenceNumber ? transmissions[slot] : 0;
+    }
+}
@@ -0,0 +1,506 @@
+package my_protocol;
+
+import framework.FileSink;
+import framework.FileSource;
+import framework.MappedFileSource;
+import framework.TimingWheel;
+import framework.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selective repeat protocol with cumulative and selective acknowledgements.
+ *
+ * Every ack carries the cumulative sequence number (the first packet the receiver is still missing) followed by a
+ * bitmap of the {@value #SACKBITS} packets after it that did arrive out of order. The sender uses that to release
+ * everything below the cumulative sequence number at once and to retransmit only the real holes, so a lost ack no
+ * longer costs a retransmission as long as a later ack makes it through.
+ *
+ * The receiver acks out of order and duplicate packets right away, but coalesces the acks of in order packets until
+ * no more packets are waiting, which keeps ack traffic on the shared channel down.
+ *
+ * Every packet, parity and acks included, ends with a {@link PacketCrc}, and corrupted packets are dropped as if they
+ * were lost. The data packets are followed by a digest packet with the length and checksum of the file, which the
+ * receiver checks the file it wrote against before it finishes.
+ *
+ * Optionally the sender adds {@value #FECPARITY} XOR parity packets to every block of {@value #FECDATA} packets (see
+ * {@link FecEncoder}), from which the receiver rebuilds lost packets before the sender gives up on them. Parity packets
+ * are told apart from data packets by the kind of their checksum.
+ *
+ * Sequence numbers go on the wire wrapped, see {@link SequenceNumber}, and the sender only keeps state for the window
+ * of packets after the first unacknowledged one, so files of any size can be sent.
+ *
+ * If {@link #COMPRESSION} is on, the file is compressed block by block before it is cut into packets (see
+ * {@link CompressedFileSource}) and decompressed while it is reassembled.
+ */
+public class SelectiveRepeatProtocol extends FileProtocol implements AckListener {
+
+    // change the following as you wish:
+    static final int HEADERSIZE = SequenceNumber.MAXSIZE;   // max. number of header bytes in each packet
+    static final int PACKETSIZE = 200; // max bytes in a packet
+
+    // max. number of user data bytes in each packet, which ends with a checksum
+    static final int DATASIZE = PACKETSIZE - HEADERSIZE - PacketCrc.SIZE;
+
+    // Number of packets after the cumulative sequence number that an ack reports on.
+    static final int SACKBITS = 32;
+
+    // How many unacknowledged packets the sender may have on the network at a time.
+    static final int WINDOWSIZE = 64;
+
+    // How many later packets have to be acknowledged before a hole is retransmitted without waiting for its timer.
+    static final int REORDERTHRESHOLD = 3;
+
+    // Forward error correction: the number of data and parity packets per block. No parity is sent if FECPARITY is 0.
+    static final int FECDATA = 8;
+    static final int FECPARITY = 1;
+
+    // Whether the file is compressed before it is sent. Must be the same on both sides. Off by default: compressing
+    // reads the whole file into memory before the first packet goes out, which only pays off for compressible files.
+    static final boolean COMPRESSION = false;
+
+    // How many blocks of FECDATA packets, with their parity, are built ahead of the sender.
+    static final int PIPELINEDEPTH = 8;
+
+    // Parity packets carry the length of the packets they cover and a longer header, so they are a few bytes larger.
+    static final int MAXPACKETSIZE = Math.max(PACKETSIZE, FecEncoder.getPacketSize(DATASIZE) + PacketCrc.SIZE);
+
+    // The file that is being sent, cut into packets.
+    private DigestedFile file;
+
+    // The data packets of the file, and all packets to send: the data packets followed by the digest packet.
+    private int dataPackets;
+    private int totalPackets;
+
+    // The first packet that has not been sent yet.
+    private int nextSequenceNumber;
+
+    // The highest packet that has been acknowledged, -1 if none.
+    private int highestAcked = -1;
+
+    // State of the packets in the window of the ack receiver, indexed by sequence number modulo its size: whether the
+    // packet was sent again because an ack reported it missing, and its retransmission timer.
+    private boolean[] fastRetransmitted;
+    private TimingWheel.Timer[] timers;
+
+    private AckReceiver receiver;
+
+    // Decides how long to wait for an ack before sending a packet again.
+    private RttEstimator rtt;
+
+    // Decide how many packets may be in flight and how fast they are handed to the network layer.
+    private CongestionController congestion;
+    private Pacer pacer;
+
+    // Whether parity packets are sent, which is not the case if forward error correction is off.
+    private boolean sendParity;
+
+    @Override
+    public void sender() {
+        System.out.println("Sending...");
+
+        // map the input file, and release it once every packet has been acknowledged
+        try (FileSource source = openSource()) {
+            send(source);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Maps the input file, and compresses it if asked to.
+     */
+    private FileSource openSource() throws IOException {
+        FileSource source = MappedFileSource.open(getFileID());
+        if (!COMPRESSION) {
+            return source;
+        }
+        try (FileSource original = source) {
+            FileSource compressed = CompressedFileSource.compress(original);
+            System.out.println("Compressed the file from " + original.size() + " to " + compressed.size() + " bytes.");
+            return compressed;
+        }
+    }
+
+    /**
+     * Sends the file and returns once every packet has been acknowledged.
+     */
+    private void send(FileSource source) {
+        // declare filesize and packetNumbers, the last data packet is always shorter than DATASIZE to mark the end,
+        // and the digest packet follows it
+        int filesize = source.size();
+        file = new DigestedFile(source, DATASIZE);
+        dataPackets = file.getDataPackets();
+        totalPackets = file.getTotalPackets();
+        sendParity = FECPARITY > 0;
+
+        System.out.println("Sending a file of " + filesize + " bytes divided over "
+            + totalPackets + " packets.");
+
+        // create a new receiver that checks for ACKs. Run in a separate thread.
+        receiver = new AckReceiver(getNetworkLayer(), totalPackets, this);
+        rtt = receiver.getRttEstimator();
+        congestion = receiver.getCongestionController();
+        pacer = new Pacer(getNetworkLayer(), congestion);
+        fastRetransmitted = new boolean[receiver.getWindow()];
+        timers = new TimingWheel.Timer[receiver.getWindow()];
+        new Thread(receiver).start();
+
+        // build the first transmission of every block, with its parity, on the common pool, so the loop below only
+        // has to send them
+        int blocks = (totalPackets + FECDATA - 1) / FECDATA;
+        PacketPipeline<byte[][]> pipeline = new PacketPipeline<>(blocks, PIPELINEDEPTH, this::buildBlock,
+            ForkJoinPool.commonPool());
+        // the block the next packet is in
+        byte[][] block = null;
+        try {
+            while (true) {
+                int sequenceNumber;
+                synchronized (this) {
+                    // wait until the window has room for a new packet, or everything has been acknowledged
+                    int base;
+                    while ((base = receiver.getFirstUnacknowledged()) < totalPackets
+                            && (nextSequenceNumber >= totalPackets
+                            || nextSequenceNumber >= base + Math.min(WINDOWSIZE, congestion.getWindow()))) {
+                        wait();
+                    }
+                    if (base >= totalPackets) {
+                        break;
+                    }
+                    sequenceNumber = nextSequenceNumber++;
+                    fastRetransmitted[sequenceNumber % fastRetransmitted.length] = false;
+                }
+
+                int first = sequenceNumber - sequenceNumber % FECDATA;
+                if (sequenceNumber == first) {
+                    block = pipeline.take();
+                }
+
+                // wait for the pacer outside of the lock, so acks keep coming in meanwhile
+                pacer.acquire();
+                transmit(sequenceNumber, block[sequenceNumber - first]);
+                System.out.println("Sent one packet with header=" + sequenceNumber);
+
+                // follow the last packet of a block with the parity of the block
+                int blockPackets = Math.min(FECDATA, totalPackets - first);
+                if (sequenceNumber == first + blockPackets - 1) {
+                    for (int i = blockPackets; i < block.length; i++) {
+                        pacer.acquire();
+                        getNetworkLayer().sendPacket(block[i]);
+                    }
+                }
+            }
+            System.out.println("File sent.");
+        } catch (InterruptedException ignored) {
+        } finally {
+            pipeline.cancel();
+        }
+    }
+
+    /**
+     * Sends a packet and (re)arms its retransmission timer.
+     */
+    private void transmit(int sequenceNumber, byte[] packet) {
+        getNetworkLayer().sendPacket(packet);
+        rtt.onSend(sequenceNumber, System.nanoTime());
+        synchronized (this) {
+            cancelTimeout(sequenceNumber);
+            timers[sequenceNumber % timers.length] =
+                Utils.Timeout.SetTimeout(rtt.getTimeout(sequenceNumber), this, sequenceNumber);
+        }
+    }
+
+    /**
+     * Cancels the retransmission timer of a packet.
+     */
+    private void cancelTimeout(int sequenceNumber) {
+        // the slot may still hold the timer of a packet one window earlier, which has been acknowledged
+        TimingWheel.Timer timer = timers[sequenceNumber % timers.length];
+        if (timer != null && timer.getTag().equals(sequenceNumber)) {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Creates the packets of a block of FECDATA packets for the pipeline, followed by the parity packets of the block
+     * if parity is sent. The parity only covers data packets, not the digest packet. Called on the threads of the
+     * pool.
+     */
+    private byte[][] buildBlock(int block) {
+        int first = block * FECDATA;
+        int blockPackets = Math.min(FECDATA, totalPackets - first);
+        byte[][] packets = new byte[blockPackets][];
+        byte[][] parity = new byte[0][];
+        // every block has an encoder of its own, so blocks can be encoded at the same time
+        FecEncoder fec = sendParity ? new FecEncoder(FECDATA, FECPARITY, DATASIZE, PacketCrc.SIZE) : null;
+        for (int i = 0; i < blockPackets; i++) {
+            int sequenceNumber = first + i;
+            byte[] packet = file.buildPacket(sequenceNumber);
+            packets[i] = packet;
+            if (fec != null && sequenceNumber < dataPackets) {
+                int headerLength = SequenceNumber.getSize(sequenceNumber);
+                parity = fec.add(sequenceNumber, packet, headerLength, packet.length - headerLength - PacketCrc.SIZE,
+                    sequenceNumber == dataPackets - 1);
+            }
+        }
+        byte[][] result = Arrays.copyOf(packets, blockPackets + parity.length);
+        for (int j = 0; j < parity.length; j++) {
+            PacketCrc.seal(parity[j], parity[j].length - PacketCrc.SIZE, PacketCrc.PARITY);
+            result[blockPackets + j] = parity[j];
+        }
+        return result;
+    }
+
+    /**
+     * Expands an ack into every packet below its cumulative sequence number that was not released yet, followed by
+     * the packets its bitmap reports.
+     */
+    @Override
+    public int decodeAck(ByteBuffer ack, int firstUnacknowledged, int[] sequenceNumbers) {
+        // drop corrupted acks, a later one reports the same
+        if (PacketCrc.check(ack) == PacketCrc.CORRUPT) {
+            return 0;
+        }
+        int wrapped = SequenceNumber.read(ack);
+        if (wrapped < 0) {
+            return 0;
+        }
+        int cumulative = Math.min(SequenceNumber.unwrap(wrapped, firstUnacknowledged), totalPackets);
+        int bitmap = ack.remaining() >= SACKBITS / 8 ? ack.getInt(ack.position()) : 0;
+
+        int count = 0;
+        for (int sequenceNumber = firstUnacknowledged; sequenceNumber < cumulative; sequenceNumber++) {
+            if (count == sequenceNumbers.length) {
+                return count;
+            }
+            sequenceNumbers[count++] = sequenceNumber;
+        }
+        for (int i = 0; i < SACKBITS && count < sequenceNumbers.length; i++) {
+            int sequenceNumber = cumulative + 1 + i;
+            if ((bitmap & (1 << i)) != 0 && sequenceNumber < totalPackets) {
+                sequenceNumbers[count++] = sequenceNumber;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The sender never has more than a window beyond the first unacknowledged packet on the network, so that is
+     * the most the cumulative part of an ack can release, on top of its bitmap.
+     */
+    @Override
+    public int getMaxAcksPerPacket() {
+        return WINDOWSIZE + SACKBITS;
+    }
+
+    /**
+     * Releases the acknowledged packets, retransmits holes that enough later packets have overtaken and wakes up the
+     * sender if the window moved.
+     */
+    @Override
+    public synchronized void onAcks(int[] sequenceNumbers, int count, long nanoTime) {
+        for (int i = 0; i < count; i++) {
+            int sequenceNumber = sequenceNumbers[i];
+            cancelTimeout(sequenceNumber);
+            highestAcked = Math.max(highestAcked, sequenceNumber);
+        }
+
+        // a hole that at least REORDERTHRESHOLD later packets have overtaken is most likely lost, unless the parity of
+        // its block may still repair it: then it waits until packets after the block are acknowledged as well
+        int highest = highestAcked;
+        int overtakenBy = 0;
+        for (int sequenceNumber = highest; sequenceNumber >= receiver.getFirstUnacknowledged(); sequenceNumber--) {
+            int slot = sequenceNumber % fastRetransmitted.length;
+            if (receiver.getAcksReceived(sequenceNumber)) {
+                overtakenBy++;
+            } else if (overtakenBy >= REORDERTHRESHOLD && !fastRetransmitted[slot]
+                    && (!sendParity || highest >= Math.min((sequenceNumber / FECDATA + 1) * FECDATA, totalPackets - 1))) {
+                fastRetransmitted[slot] = true;
+                congestion.onLoss(nanoTime);
+                transmit(sequenceNumber, file.buildPacket(sequenceNumber));
+                System.out.println("Sent packet " + sequenceNumber + " again, the ack reported it missing.");
+            }
+        }
+
+        // the window of the ack receiver moved before this call
+        notifyAll();
+    }
+
+    @Override
+    public void TimeoutElapsed(Object tag) {
+        int z = (Integer) tag;
+        synchronized (this) {
+            // if no ACK received for sequence number, retransmit
+            if (receiver.getAcksReceived(z)) {
+                return;
+            }
+            congestion.onLoss(System.nanoTime());
+            transmit(z, file.buildPacket(z));
+        }
+        System.out.println("Timer expired, sent packet " + z + " again.");
+    }
+
+    @Override
+    public void receiveInto(FileSink sink) throws IOException {
+        System.out.println("Receiving...");
+
+        // Keep track of the received and missing packets, and of the part of the file that is complete.
+        ReassemblyBuffer reassembly = new ReassemblyBuffer(DATASIZE, SequenceNumber.WINDOW);
+
+        // Decompress the complete part of the file on the fly, if the sender compressed it, and compute the checksum
+        // of what was sent on the way for the digest packet of the sender.
+        DecompressingFileSink decompressor = COMPRESSION ? new DecompressingFileSink(sink) : null;
+        DigestingFileSink output = new DigestingFileSink(decompressor != null ? decompressor : sink);
+
+        // The sequence number of the digest packet, and the length and checksum of the file it reported, -1 until it
+        // arrived.
+        int digest = -1;
+        int expectedLength = -1;
+        int expectedDigest = 0;
+
+        // buffer to receive the packets in, reused for every packet
+        ByteBuffer packet = ByteBuffer.allocate(MAXPACKETSIZE);
+
+        // Rebuilds lost packets from the parity packets of the sender.
+        FecDecoder fec = FECPARITY > 0 ? new FecDecoder(FECDATA, FECPARITY, DATASIZE) : null;
+
+        // whether in order packets have arrived that have not been acknowledged yet
+        boolean ackPending = false;
+
+        // loop until we are done receiving the file
+        boolean stop = false;
+        while (!stop) {
+
+            // try to receive a packet from the network layer, reusing the buffer
+            packet.clear();
+
+            // wait for the next packet, but only check for one while an ack is pending, so the ack goes out as soon
+            // as no more packets are waiting
+            boolean received;
+            try {
+                received = getNetworkLayer().receivePacket(packet, ackPending ? 0 : 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                stop = true;
+                continue;
+            }
+
+            // if we indeed received a packet
+            if (received) {
+                packet.flip();
+
+                // drop corrupted packets without an ack, the sender will send them again; so are packets too short to
+                // carry a checksum, such as the empty one the client hands over for a packet it could not decode
+                int kind = PacketCrc.check(packet);
+                if (kind == PacketCrc.CORRUPT) {
+                    continue;
+                }
+
+                // resolve the wrapped sequence number against the first packet that is still missing; for a parity
+                // packet it is the first packet of its block
+                int wrapped = SequenceNumber.read(packet);
+                if (wrapped < 0) {
+                    continue;
+                }
+                int sequenceNumber = SequenceNumber.unwrap(wrapped, reassembly.getContiguousPackets());
+                int headerLength = packet.position();
+
+                boolean inOrder;
+                if (kind == PacketCrc.PARITY) {
+                    // a parity packet only matters if it rebuilds a lost packet, which then is acked right away
+                    if (fec == null || !reassembly.isInWindow(sequenceNumber)) {
+                        continue;
+                    }
+                    int recovered = fec.onParity(sequenceNumber, packet);
+                    if (recovered < 0 || !reassembly.insert(recovered, fec.getRecovered())) {
+                        continue;
+                    }
+                    System.out.println("Recovered packet " + recovered + " from parity.");
+                    reassembly.flushTo(output);
+                    inOrder = false;
+                } else if (kind == PacketCrc.DIGEST) {
+                    inOrder = sequenceNumber == reassembly.getContiguousPackets();
+                    if (packet.remaining() == PacketCrc.DIGESTSIZE) {
+                        digest = sequenceNumber;
+                        expectedLength = packet.getInt();
+                        expectedDigest = packet.getInt();
+                    }
+                } else {
+                    inOrder = sequenceNumber == reassembly.getContiguousPackets();
+
+                    // store the packet's data part (excluding the header), ignoring duplicates
+                    if (reassembly.insert(sequenceNumber, packet)) {
+                        // let the parity of the block rebuild a lost packet if this was the last one it needed
+                        packet.position(headerLength);
+                        int recovered = fec != null ? fec.onData(sequenceNumber, packet) : -1;
+                        if (recovered >= 0 && reassembly.insert(recovered, fec.getRecovered())) {
+                            System.out.println("Recovered packet " + recovered + " from parity.");
+                            inOrder = false;
+                        }
+
+                        // write the part of the file that is now complete up to the first gap
+                        reassembly.flushTo(output);
+                    }
+                }
+
+                // parity of the blocks that are complete is of no use anymore
+                if (fec != null) {
+                    fec.setKnown(reassembly.getContiguousPackets());
+                }
+
+                // Stop once all packets have been received and the file matches the digest of the sender
+                if (expectedLength >= 0 && reassembly.isComplete()) {
+                    output.verify(expectedLength, expectedDigest);
+                    if (decompressor != null) {
+                        decompressor.finish();
+                        decompressor.close();
+                    }
+                    System.out.println("File received.");
+                    stop = true;
+                }
+
+                // ack gaps, duplicates and the end of the file right away, coalesce the rest
+                if (!inOrder || stop) {
+                    sendAck(reassembly, digest);
+                    ackPending = false;
+                } else {
+                    ackPending = true;
+                }
+            } else if (ackPending) {
+                // no more packets are waiting, acknowledge the ones that came in
+                sendAck(reassembly, digest);
+                ackPending = false;
+            }
+        }
+    }
+
+    /**
+     * Sends an ack with the cumulative sequence number and the bitmap of packets received after it.
+     *
+     * @param digest the sequence number of the digest packet if it arrived, which the reassembly buffer does not hold,
+     *               otherwise -1
+     */
+    private void sendAck(ReassemblyBuffer reassembly, int digest) {
+        int cumulative = reassembly.getContiguousPackets();
+        if (cumulative == digest) {
+            cumulative++;
+        }
+        int bitmap = 0;
+        for (int i = 0; i < SACKBITS; i++) {
+            int sequenceNumber = cumulative + 1 + i;
+            if (reassembly.isReceived(sequenceNumber) || sequenceNumber == digest) {
+                bitmap |= 1 << i;
+            }
+        }
+
+        int headerLength = SequenceNumber.getSize(cumulative);
+        byte[] ack = new byte[headerLength + SACKBITS / 8 + PacketCrc.SIZE];
+        SequenceNumber.write(ack, 0, cumulative);
+        ByteBuffer.wrap(ack, headerLength, SACKBITS / 8).putInt(bitmap);
+        PacketCrc.seal(ack, ack.length - PacketCrc.SIZE, PacketCrc.DATA);
+        getNetworkLayer().sendPacket(ack);
+    }
+}
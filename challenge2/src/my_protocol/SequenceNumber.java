@@ -0,0 +1,87 @@
+package my_protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes sequence numbers in a header of one to {@value #MAXSIZE} bytes and resolves them again.
+ *
+ * Only the lowest {@value #BITS} bits of a sequence number go on the wire, as a varint: seven bits per byte, lowest
+ * first, with the highest bit set on every byte but the last. The first 128 packets take one byte of header and the
+ * first 16384 two. A file may have any number of packets, because both sides only ever compare sequence numbers
+ * within {@value #WINDOW} of the first packet that is still missing: a wrapped number is resolved to the one closest to
+ * such a reference, which is unambiguous as long as the window is smaller than half the sequence number space.
+ */
+public final class SequenceNumber {
+
+    static final int BITS = 21;
+    static final int SPACE = 1 << BITS;
+    static final int MASK = SPACE - 1;
+
+    // The most bytes a sequence number takes in a header.
+    static final int MAXSIZE = (BITS + 6) / 7;
+
+    // How far beyond the first unacknowledged packet the sender may send, and how far beyond the first missing packet
+    // the receiver buffers. Also bounds the per packet state of both sides.
+    static final int WINDOW = 1 << 12;
+
+    private SequenceNumber() {
+    }
+
+    /**
+     * @return the number of header bytes the given sequence number takes
+     */
+    public static int getSize(int sequenceNumber) {
+        int wrapped = sequenceNumber & MASK;
+        return wrapped < 1 << 7 ? 1 : wrapped < 1 << 14 ? 2 : 3;
+    }
+
+    /**
+     * Writes the wrapped sequence number as a varint.
+     *
+     * @return the number of bytes written
+     */
+    public static int write(byte[] packet, int offset, int sequenceNumber) {
+        int wrapped = sequenceNumber & MASK;
+        int size = 0;
+        while (wrapped >= 0x80) {
+            packet[offset + size++] = (byte) (wrapped | 0x80);
+            wrapped >>>= 7;
+        }
+        packet[offset + size++] = (byte) wrapped;
+        return size;
+    }
+
+    /**
+     * Reads a wrapped sequence number from the position of the buffer and moves the position past it.
+     *
+     * @return the wrapped sequence number, or -1 if the header is truncated or too long
+     */
+    public static int read(ByteBuffer packet) {
+        int wrapped = 0;
+        for (int i = 0; i < MAXSIZE; i++) {
+            if (!packet.hasRemaining()) {
+                return -1;
+            }
+            int b = packet.get() & 0xff;
+            wrapped |= (b & 0x7f) << (7 * i);
+            if (b < 0x80) {
+                return wrapped & MASK;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return how many packets b lies after a, counted modulo the sequence number space: negative if b lies before a
+     */
+    public static int distance(int a, int b) {
+        return (b - a) << (32 - BITS) >> (32 - BITS);
+    }
+
+    /**
+     * @return the sequence number with the given lowest bits that is closest to the reference
+     */
+    public static int unwrap(int wrapped, int reference) {
+        return reference + distance(reference, wrapped);
+    }
+}
@@ -0,0 +1,137 @@
+package my_protocol;
+
+import framework.NetworkLayer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Carries several independent streams over one network layer, each with its own {@link StreamNetworkLayer}.
+ *
+ * Every packet starts with the id of its stream (one byte). Received packets are dispatched to their stream on the
+ * thread that receives them. Packets to send wait in the queue of their stream; a scheduler thread takes them round
+ * robin, one packet per stream per turn, and hands them to the network layer only while its output buffer has room,
+ * so a stream with a large backlog cannot crowd the others out of the slots of the server.
+ */
+public class SessionMultiplexer {
+
+    // The highest stream id that fits in the header.
+    static final int MAXSTREAMID = 255;
+
+    // How long to wait before looking at a full output buffer again.
+    private static final long BACKLOG_RETRY_NANOS = 1_000_000;
+
+    private final NetworkLayer network;
+    private final StreamNetworkLayer[] streamsById = new StreamNetworkLayer[MAXSTREAMID + 1];
+    private final List<StreamNetworkLayer> streams = new ArrayList<>();
+
+    // The number of packets waiting in the queues of all streams.
+    private final Semaphore queued = new Semaphore(0);
+
+    private Thread scheduler;
+
+    /**
+     * @param network the network layer that carries all streams
+     */
+    public SessionMultiplexer(NetworkLayer network) {
+        this.network = network;
+    }
+
+    /**
+     * Creates the network layer of a stream. All streams have to be opened before {@link #start()}.
+     *
+     * @param streamId the id of the stream, which both sides have to agree on
+     * @return the network layer of the stream
+     */
+    public StreamNetworkLayer openStream(int streamId) {
+        if (streamId < 0 || streamId > MAXSTREAMID) {
+            throw new IllegalArgumentException("Stream id out of range: " + streamId);
+        }
+        if (streamsById[streamId] != null) {
+            throw new IllegalArgumentException("Stream " + streamId + " is already open");
+        }
+        StreamNetworkLayer stream = new StreamNetworkLayer(streamId, this);
+        streamsById[streamId] = stream;
+        streams.add(stream);
+        return stream;
+    }
+
+    /**
+     * Starts dispatching received packets to the streams and sending the packets of the streams.
+     */
+    public void start() {
+        network.onPacket(this::dispatch);
+        scheduler = new Thread(this::schedule, "Stream Scheduler");
+        scheduler.setDaemon(true);
+        scheduler.start();
+    }
+
+    /**
+     * Stops the scheduler and queues received packets in the network layer again.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.interrupt();
+        }
+        network.onPacket(null);
+    }
+
+    /**
+     * @return the timer tick of the underlying network layer
+     */
+    public int getTick() {
+        return network.getTick();
+    }
+
+    /**
+     * Tells the scheduler a stream queued a packet.
+     */
+    void onOutput() {
+        queued.release();
+    }
+
+    private void dispatch(ByteBuffer packet) {
+        if (!packet.hasRemaining()) {
+            return;
+        }
+        StreamNetworkLayer stream = streamsById[packet.get(packet.position()) & 0xff];
+        if (stream == null) {
+            // a stream this side does not know, drop it
+            return;
+        }
+        packet.position(packet.position() + 1);
+        stream.deliver(packet);
+    }
+
+    private void schedule() {
+        // the stream that gets the next turn
+        int next = 0;
+        try {
+            while (true) {
+                queued.acquire();
+
+                // wait for room in the output buffer, like the pacer of a single protocol does
+                while (network.getOutputBacklog() >= Pacer.MAX_BACKLOG) {
+                    LockSupport.parkNanos(BACKLOG_RETRY_NANOS);
+                    if (Thread.interrupted()) {
+                        return;
+                    }
+                }
+
+                // the first stream from the one whose turn it is that has a packet waiting
+                byte[] packet = null;
+                for (int i = 0; i < streams.size() && packet == null; i++) {
+                    packet = streams.get(next).pollOutput();
+                    next = (next + 1) % streams.size();
+                }
+                if (packet != null) {
+                    network.sendPacket(packet);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package my_protocol;
+
+import framework.NetworkLayer;
+import framework.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The network layer of one stream of a {@link SessionMultiplexer}, so an unmodified protocol can run on it.
+ *
+ * Packets that are sent get the stream id as their first byte and wait in a queue of this stream until the scheduler
+ * of the multiplexer gives them a turn; the output backlog is the length of that queue, so the pacer of the protocol
+ * paces against its own share of the channel. Received packets of the stream arrive without the stream id.
+ *
+ * Once the protocol is done with the stream it is closed, after which received packets are no longer kept. A closed
+ * receiving stream answers every packet with the last packet it sent, so a sender whose final ack was lost still gets
+ * it while the multiplexer runs.
+ */
+public class StreamNetworkLayer extends NetworkLayer {
+
+    private final int streamId;
+    private final SessionMultiplexer multiplexer;
+
+    // packets waiting for a turn of the scheduler, already carrying the stream id, and how many there are
+    private final ConcurrentLinkedQueue<byte[]> output = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outputCount = new AtomicInteger();
+
+    // received packets, which the protocol can block on
+    private final LinkedBlockingQueue<byte[]> input = new LinkedBlockingQueue<>();
+
+    // receives the packets instead of the input queue, if set
+    private Consumer<ByteBuffer> packetListener;
+
+    // the last packet that was sent, already carrying the stream id
+    private volatile byte[] lastSent;
+
+    // whether the protocol stopped reading, and whether to answer received packets with lastSent since
+    private boolean closed;
+    private boolean answer;
+
+    StreamNetworkLayer(int streamId, SessionMultiplexer multiplexer) {
+        super(null);
+        this.streamId = streamId;
+        this.multiplexer = multiplexer;
+    }
+
+    /**
+     * @return the id that marks the packets of this stream
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    @Override
+    public void sendPacket(Integer[] packet) throws IllegalArgumentException {
+        sendPacket(Utils.toBytes(packet));
+    }
+
+    @Override
+    public void sendPacket(byte[] packet) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet == null");
+        }
+        byte[] contents = new byte[1 + packet.length];
+        contents[0] = (byte) streamId;
+        System.arraycopy(packet, 0, contents, 1, packet.length);
+        enqueue(contents);
+    }
+
+    @Override
+    public void sendPacket(ByteBuffer packet) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet == null");
+        }
+        byte[] contents = new byte[1 + packet.remaining()];
+        contents[0] = (byte) streamId;
+        packet.get(contents, 1, contents.length - 1);
+        enqueue(contents);
+    }
+
+    @Override
+    public Integer[] receivePacket() {
+        byte[] packet = input.poll();
+        return packet == null ? null : Utils.toIntegers(packet);
+    }
+
+    @Override
+    public boolean receivePacket(ByteBuffer destination) {
+        return copy(input.poll(), destination);
+    }
+
+    @Override
+    public Integer[] receivePacket(long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] packet = input.poll(timeout, unit);
+        return packet == null ? null : Utils.toIntegers(packet);
+    }
+
+    @Override
+    public boolean receivePacket(ByteBuffer destination, long timeout, TimeUnit unit) throws InterruptedException {
+        return copy(input.poll(timeout, unit), destination);
+    }
+
+    @Override
+    public void onPacket(Consumer<ByteBuffer> listener) {
+        synchronized (input) {
+            packetListener = listener;
+            if (listener != null) {
+                byte[] packet;
+                while ((packet = input.poll()) != null) {
+                    listener.accept(ByteBuffer.wrap(packet));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getOutputBacklog() {
+        return outputCount.get();
+    }
+
+    @Override
+    public int getTick() {
+        return multiplexer.getTick();
+    }
+
+    /**
+     * Takes the next packet to send, including the stream id. Called by the scheduler of the multiplexer.
+     *
+     * @return the packet, or null if none is waiting
+     */
+    byte[] pollOutput() {
+        byte[] packet = output.poll();
+        if (packet != null) {
+            outputCount.decrementAndGet();
+        }
+        return packet;
+    }
+
+    /**
+     * Hands a received packet of this stream to the protocol. Called by the multiplexer on the thread that receives.
+     *
+     * @param packet the packet, from after the stream id up to its limit; only valid during the call
+     */
+    void deliver(ByteBuffer packet) {
+        synchronized (input) {
+            if (closed) {
+                byte[] last = lastSent;
+                if (answer && last != null) {
+                    enqueue(last);
+                }
+            } else if (packetListener != null) {
+                // protocols read their headers at absolute indices, so the packet has to start at index 0
+                packetListener.accept(packet.slice());
+            } else {
+                byte[] contents = new byte[packet.remaining()];
+                packet.get(contents);
+                input.offer(contents);
+            }
+        }
+    }
+
+    /**
+     * Stops keeping received packets, because the protocol no longer reads them, and drops the ones still queued.
+     *
+     * @param answer whether to answer every packet that arrives from now on with the last packet that was sent, such
+     *               as the final ack of a receiver
+     */
+    void close(boolean answer) {
+        synchronized (input) {
+            closed = true;
+            this.answer = answer;
+            packetListener = null;
+            input.clear();
+        }
+    }
+
+    private void enqueue(byte[] packet) {
+        lastSent = packet;
+        outputCount.incrementAndGet();
+        output.offer(packet);
+        multiplexer.onOutput();
+    }
+
+    private static boolean copy(byte[] packet, ByteBuffer destination) {
+        if (packet == null) {
+            return false;
+        }
+        destination.put(packet, 0, Math.min(packet.length, destination.remaining()));
+        return true;
+    }
+}
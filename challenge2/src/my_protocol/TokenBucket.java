@@ -0,0 +1,57 @@
+package my_protocol;
+
+/**
+ * Non-blocking token bucket. Tokens flow in at a configurable rate up to a maximum burst, and every packet takes one.
+ * Instead of sleeping, {@link #tryAcquire(long)} tells the caller how long it has to wait for the next token, so the
+ * caller decides how to wait and never holds a lock while doing so.
+ */
+public class TokenBucket {
+
+    private double ratePerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond the number of tokens added per second
+     * @param burst         the maximum number of tokens that can be saved up
+     */
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Changes the rate at which tokens are added, starting now.
+     */
+    public synchronized void setRate(double ratePerSecond) {
+        refill(System.nanoTime());
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param nanoTime the current time, as given by System.nanoTime()
+     * @return 0 if a token was taken, otherwise the number of nanoseconds until the next token is available
+     */
+    public synchronized long tryAcquire(long nanoTime) {
+        refill(nanoTime);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerSecond * 1e9));
+    }
+
+    private void refill(long nanoTime) {
+        if (Double.isInfinite(ratePerSecond)) {
+            tokens = burst;
+        } else if (nanoTime > lastRefill) {
+            tokens = Math.min(burst, tokens + (nanoTime - lastRefill) * ratePerSecond / 1e9);
+        }
+        lastRefill = Math.max(lastRefill, nanoTime);
+    }
+}
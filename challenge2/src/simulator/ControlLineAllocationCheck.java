@@ -0,0 +1,152 @@
+package simulator;
+
+import framework.ControlLineReader;
+import framework.ControlLineWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Checks that {@link ControlLineReader} and {@link ControlLineWriter} allocate nothing per control line, by measuring
+ * the bytes the thread allocates while it handles the lines of a slot over and over.
+ *
+ * The reader gets the lines the server sends, from a stream that repeats them without allocating, and the writer
+ * writes the answers of the client to a stream that discards them. Every kind of line is first handled often enough
+ * for the JIT to compile it, and then measured. Decoding a packet allocates the array of the packet and nothing else,
+ * so for that line the size of the array is subtracted. The bytes allocated by the current thread are reported by the
+ * JVM through {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}.
+ *
+ * Run with {@code java simulator.ControlLineAllocationCheck [messages]}, where messages is the number of lines of every
+ * kind to measure, 1000000 by default. The exit status is 1 if a line allocated, so the check can run after every
+ * change of the framework.
+ */
+public class ControlLineAllocationCheck {
+
+    private static final String PROTOCOL = "RDTCHALLENGE/4.0";
+
+    // The most bytes per line that still count as nothing, for the odd allocation of the JVM itself in the thread.
+    private static final double TOLERANCE = 0.01;
+
+    // The bytes of an array header, plus the padding to 8 bytes of the packet array.
+    private static final int ARRAYOVERHEAD = 16;
+
+    private static final byte[] SLOT = bytes("SLOT");
+    private static final byte[] PACKET = bytes("PACKET");
+    private static final byte[] TRANSMIT = bytes("TRANSMIT");
+    private static final byte[] NOTRANSMIT = bytes("NOTRANSMIT");
+
+    // A packet of the largest size the protocols send.
+    private static final byte[] PAYLOAD = new byte[200];
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long messages;
+    private boolean allocating;
+
+    // Keeps the results alive, so the JIT cannot drop the work.
+    private long sink;
+
+    private ControlLineAllocationCheck(long messages) {
+        this.messages = messages;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ControlLineAllocationCheck check = new ControlLineAllocationCheck(
+            args.length > 0 ? Long.parseLong(args[0]) : 1_000_000);
+        if (!check.threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("[ALLOCATION] This JVM cannot measure the bytes a thread allocates.");
+            System.exit(2);
+        }
+        check.threads.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < PAYLOAD.length; i++) {
+            PAYLOAD[i] = (byte) (i * 31);
+        }
+
+        ControlLineReader slots = new ControlLineReader(new RepeatingInputStream(PROTOCOL + " SLOT 12345\n"), PROTOCOL);
+        check.measure("Reading SLOT 12345", 0, () -> {
+            slots.next();
+            if (slots.getFieldCount() > 1 && slots.startsWith(SLOT)) {
+                check.sink += slots.getInt(1);
+            }
+        });
+
+        ControlLineReader packets = new ControlLineReader(new RepeatingInputStream(
+            PROTOCOL + " PACKET " + Base64.getEncoder().encodeToString(PAYLOAD) + "\n"), PROTOCOL);
+        check.measure("Reading PACKET with a packet of " + PAYLOAD.length + " bytes", PAYLOAD.length + ARRAYOVERHEAD,
+            () -> {
+                packets.next();
+                if (packets.getFieldCount() > 1 && packets.startsWith(PACKET)) {
+                    check.sink += packets.getBase64(1).length;
+                }
+            });
+
+        ControlLineWriter writer = new ControlLineWriter(OutputStream.nullOutputStream(), PROTOCOL);
+        check.measure("Writing TRANSMIT with a packet of " + PAYLOAD.length + " bytes", 0,
+            () -> writer.sendBase64(TRANSMIT, PAYLOAD));
+        check.measure("Writing NOTRANSMIT", 0, () -> writer.send(NOTRANSMIT));
+
+        System.exit(check.allocating ? 1 : 0);
+    }
+
+    /**
+     * Handles a line often enough to compile it, then measures the bytes per line beyond the expected ones.
+     */
+    private void measure(String name, long expected, Line line) throws IOException {
+        for (long i = 0; i < messages; i++) {
+            line.handle();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (long i = 0; i < messages; i++) {
+            line.handle();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        double perLine = Math.max(0, (double) allocated / messages - expected);
+        boolean ok = perLine <= TOLERANCE;
+        allocating |= !ok;
+        System.out.printf("[ALLOCATION] %s: %.4f bytes per line%s (%s).%n", name, perLine,
+            expected > 0 ? " besides the " + expected + " of the packet array" : "",
+            ok ? "nothing allocated" : "ALLOCATES");
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Handles one control line.
+     */
+    private interface Line {
+        void handle() throws IOException;
+    }
+
+    /**
+     * A stream that repeats the same text forever.
+     */
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] text;
+        private int position;
+
+        RepeatingInputStream(String text) {
+            this.text = bytes(text);
+        }
+
+        @Override
+        public int read() {
+            int value = text[position] & 0xff;
+            position = (position + 1) % text.length;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int count = Math.min(length, text.length - position);
+            System.arraycopy(text, position, buffer, offset, count);
+            position = (position + count) % text.length;
+            return count;
+        }
+    }
+}
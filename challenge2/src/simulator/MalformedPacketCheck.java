@@ -0,0 +1,248 @@
+package simulator;
+
+import framework.ByteArraySink;
+import framework.IRDTProtocol;
+import framework.NetworkLayer;
+import framework.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Checks that a protocol survives packets too short to carry a header, by transferring a file between a sender and a
+ * receiver of the protocol that are connected in the process, after handing both of them malformed packets first.
+ *
+ * The client of the framework hands the protocol an empty packet for a line it could not decode, and a faulty channel
+ * can cut a packet short, so before the transfer starts the receiver and the sender each get an empty packet and a
+ * packet of one byte, with the parity flag set. The check passes if both sides finish and the receiver wrote exactly
+ * the file that was sent.
+ *
+ * The check is configured with name=value arguments and runs in the directory with the input files, for example
+ * {@code java simulator.MalformedPacketCheck protocol=my_protocol.MyProtocol file=2}:
+ * <ul>
+ * <li>protocol: the class of the protocol to check, my_protocol.SelectiveRepeatProtocol by default</li>
+ * <li>file: the id of the input file to transfer, 1 by default</li>
+ * <li>timeout: the most seconds the transfer may take, 60 by default</li>
+ * </ul>
+ * The exit status is 1 if a side failed or the file arrived wrong, so the check can run after every change of the
+ * protocols.
+ */
+public class MalformedPacketCheck {
+
+    // The packets the client and the channel can produce that no protocol can read a header from.
+    private static final byte[][] MALFORMED = {new byte[0], {(byte) 0x80}};
+
+    private String protocol = "my_protocol.SelectiveRepeatProtocol";
+    private int file = 1;
+    private long timeout = 60;
+
+    // The first failure of a side, if any.
+    private volatile Throwable failure;
+
+    public static void main(String[] args) throws Exception {
+        MalformedPacketCheck check = new MalformedPacketCheck();
+        for (String arg : args) {
+            check.configure(arg);
+        }
+        Utils.Timeout.Start();
+        boolean ok;
+        try {
+            ok = check.run();
+        } finally {
+            Utils.Timeout.Stop();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Applies one name=value argument.
+     */
+    private void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "protocol": protocol = value; break;
+            case "file": file = Integer.parseInt(value); break;
+            case "timeout": timeout = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    /**
+     * Transfers the file after the malformed packets and reports the outcome.
+     *
+     * @return whether both sides finished and the file arrived intact
+     */
+    private boolean run() throws Exception {
+        byte[] expected = Files.readAllBytes(Paths.get(String.format("rdtcInput%d.png", file)));
+
+        Loopback senderSide = new Loopback();
+        Loopback receiverSide = new Loopback();
+        senderSide.peer = receiverSide;
+        receiverSide.peer = senderSide;
+        for (byte[] packet : MALFORMED) {
+            senderSide.deliver(packet);
+            receiverSide.deliver(packet);
+        }
+
+        IRDTProtocol sender = create(senderSide);
+        IRDTProtocol receiver = create(receiverSide);
+        ByteArraySink sink = new ByteArraySink();
+
+        Thread receiving = new Thread(() -> {
+            try {
+                receiver.receiveInto(sink);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        });
+        Thread sending = new Thread(() -> {
+            try {
+                sender.sender();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        });
+        receiving.start();
+        sending.start();
+        receiving.join(TimeUnit.SECONDS.toMillis(timeout));
+        sending.join(TimeUnit.SECONDS.toMillis(timeout));
+
+        String outcome;
+        if (failure != null) {
+            outcome = "failed with " + failure;
+        } else if (receiving.isAlive() || sending.isAlive()) {
+            outcome = "did not finish within " + timeout + " seconds";
+        } else if (!Arrays.equals(expected, sink.toByteArray())) {
+            outcome = "received " + sink.toByteArray().length + " bytes that differ from the " + expected.length
+                + " bytes sent";
+        } else {
+            outcome = null;
+        }
+        System.out.printf("[MALFORMED] %s with file %d after %d malformed packets: %s.%n", protocol, file,
+            MALFORMED.length, outcome == null ? "file received intact" : outcome);
+        if (receiving.isAlive() || sending.isAlive()) {
+            receiving.interrupt();
+            sending.interrupt();
+        }
+        return outcome == null;
+    }
+
+    private IRDTProtocol create(NetworkLayer network) throws ReflectiveOperationException {
+        IRDTProtocol instance = (IRDTProtocol) Class.forName(protocol).getDeclaredConstructor().newInstance();
+        instance.setNetworkLayer(network);
+        instance.setFileID(file);
+        return instance;
+    }
+
+    /**
+     * One end of a lossless in-process link, which hands every packet it sends to its peer.
+     */
+    private static class Loopback extends NetworkLayer {
+        private static final long START_NANOS = System.nanoTime();
+
+        private final LinkedBlockingQueue<byte[]> input = new LinkedBlockingQueue<>();
+        private Consumer<ByteBuffer> packetListener;
+        private Loopback peer;
+
+        Loopback() {
+            super(null);
+        }
+
+        @Override
+        public void sendPacket(Integer[] packet) throws IllegalArgumentException {
+            sendPacket(Utils.toBytes(packet));
+        }
+
+        @Override
+        public void sendPacket(byte[] packet) throws IllegalArgumentException {
+            if (packet == null) {
+                throw new IllegalArgumentException("packet == null");
+            }
+            peer.deliver(packet.clone());
+        }
+
+        @Override
+        public void sendPacket(ByteBuffer packet) throws IllegalArgumentException {
+            if (packet == null) {
+                throw new IllegalArgumentException("packet == null");
+            }
+            byte[] contents = new byte[packet.remaining()];
+            packet.get(contents);
+            peer.deliver(contents);
+        }
+
+        @Override
+        public Integer[] receivePacket() {
+            byte[] packet = input.poll();
+            return packet == null ? null : Utils.toIntegers(packet);
+        }
+
+        @Override
+        public boolean receivePacket(ByteBuffer destination) {
+            return copy(input.poll(), destination);
+        }
+
+        @Override
+        public Integer[] receivePacket(long timeout, TimeUnit unit) throws InterruptedException {
+            byte[] packet = input.poll(timeout, unit);
+            return packet == null ? null : Utils.toIntegers(packet);
+        }
+
+        @Override
+        public boolean receivePacket(ByteBuffer destination, long timeout, TimeUnit unit) throws InterruptedException {
+            return copy(input.poll(timeout, unit), destination);
+        }
+
+        @Override
+        public void onPacket(Consumer<ByteBuffer> listener) {
+            synchronized (input) {
+                packetListener = listener;
+                if (listener != null) {
+                    byte[] packet;
+                    while ((packet = input.poll()) != null) {
+                        listener.accept(ByteBuffer.wrap(packet));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int getOutputBacklog() {
+            return 0;
+        }
+
+        @Override
+        public int getTick() {
+            return (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - START_NANOS);
+        }
+
+        private void deliver(byte[] packet) {
+            synchronized (input) {
+                if (packetListener != null) {
+                    packetListener.accept(ByteBuffer.wrap(packet));
+                } else {
+                    input.offer(packet);
+                }
+            }
+        }
+
+        private static boolean copy(byte[] packet, ByteBuffer destination) {
+            if (packet == null) {
+                return false;
+            }
+            destination.put(packet, 0, Math.min(packet.length, destination.remaining()));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package simulator;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Base64;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Local stand-in for the RDT challenge server, so protocols can be measured without the university server.
+ *
+ * It speaks RDTCHALLENGE/4.0 to two clients: it waits for both to register, starts the simulation when one of them
+ * requests it, offers both clients a slot every tick and carries the transmitted packets to the other client over a
+ * simulated channel. A client is only offered a new slot once it answered the previous one, like the real server.
+ * The run ends when the receiver uploads the checksum of its output file, and the simulator prints whether it matches
+ * the checksum of the input file and how long the transfer took.
+ *
+ * The channel is configured with name=value arguments, for example
+ * {@code java simulator.RDTChallengeSimulator loss=0.1 delay=10 seed=42}:
+ * <ul>
+ * <li>port: the port to listen on, 8002 by default</li>
+ * <li>slot: the length of a tick in milliseconds, 10 by default</li>
+ * <li>delay: the number of ticks a packet takes to arrive, 10 by default</li>
+ * <li>loss: the probability that a packet is lost</li>
+ * <li>corruption: the probability that a bit of a packet is flipped</li>
+ * <li>reorder: the probability that a packet is held back by up to reorderdelay extra ticks (10 by default)</li>
+ * <li>seed: the seed of the random decisions of the channel, so runs can be repeated</li>
+ * <li>maxticks: the number of ticks after which the simulation is aborted, 100000 by default</li>
+ * </ul>
+ * The clients are pointed at the simulator with {@code -Dchallenge.server=localhost}.
+ */
+public class RDTChallengeSimulator {
+    private static final String PROTOCOL = "RDTCHALLENGE/4.0";
+
+    private int port = 8002;
+    private long slotMillis = 10;
+    private int delay = 10;
+    private double loss = 0;
+    private double corruption = 0;
+    private double reorder = 0;
+    private int reorderDelay = 10;
+    private long seed = 1;
+    private int maxTicks = 100000;
+
+    private final Connection[] clients = new Connection[2];
+
+    // The random decisions of the channel, one generator per direction so the order of the threads does not matter.
+    private Random[] random;
+
+    // The packets on their way, ordered by arrival tick and then by transmission.
+    private final PriorityQueue<InFlight> inFlight = new PriorityQueue<>();
+    private long transmissions;
+
+    private int tick;
+
+    // Set by the connections: the requested file and sender, the checksums and whether a client left.
+    private int file = -1;
+    private int sender = -1;
+    private Long checksumIn;
+    private Long checksumOut;
+    private boolean closed;
+
+    // Statistics of the run.
+    private int sent;
+    private int lost;
+    private int corrupted;
+    private int reordered;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        RDTChallengeSimulator simulator = new RDTChallengeSimulator();
+        for (String arg : args) {
+            simulator.configure(arg);
+        }
+        simulator.run();
+    }
+
+    /**
+     * Applies one name=value argument.
+     */
+    private void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "port": port = Integer.parseInt(value); break;
+            case "slot": slotMillis = Long.parseLong(value); break;
+            case "delay": delay = Integer.parseInt(value); break;
+            case "loss": loss = Double.parseDouble(value); break;
+            case "corruption": corruption = Double.parseDouble(value); break;
+            case "reorder": reorder = Double.parseDouble(value); break;
+            case "reorderdelay": reorderDelay = Integer.parseInt(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            case "maxticks": maxTicks = Integer.parseInt(value); break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        random = new Random[]{new Random(seed), new Random(seed + 1)};
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("[SIMULATOR] Waiting for two clients on port " + port + "...");
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Connection(i, server.accept());
+                System.out.println("[SIMULATOR] Client " + i + " registered.");
+            }
+        }
+        for (Connection client : clients) {
+            client.start();
+        }
+
+        synchronized (this) {
+            while (sender < 0 && !closed) {
+                wait();
+            }
+        }
+        if (closed) {
+            return;
+        }
+
+        byte[] challenge = new byte[16];
+        new Random(seed).nextBytes(challenge);
+        String start = "START " + file + " " + Base64.getEncoder().encodeToString(challenge);
+        for (Connection client : clients) {
+            client.send(start);
+        }
+        System.out.println("[SIMULATOR] Started file " + file + " with client " + sender + " as sender.");
+
+        long startTime = System.nanoTime();
+        String result;
+        while (true) {
+            synchronized (this) {
+                if (checksumOut != null) {
+                    result = checksumOut.equals(checksumIn) ? "correct" : "INCORRECT";
+                    break;
+                }
+                if (closed || tick >= maxTicks) {
+                    result = "aborted";
+                    break;
+                }
+                tick++;
+                // deliver the packets that arrive in this tick
+                while (!inFlight.isEmpty() && inFlight.peek().arrival <= tick) {
+                    InFlight packet = inFlight.poll();
+                    clients[packet.destination].send("PACKET " + Base64.getEncoder().encodeToString(packet.contents));
+                }
+            }
+            for (Connection client : clients) {
+                client.offerSlot(tick);
+            }
+            Thread.sleep(slotMillis);
+        }
+
+        long elapsed = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("[SIMULATOR] Transfer " + result + " after " + tick + " ticks (" + elapsed + " ms).");
+        System.out.println("[SIMULATOR] " + sent + " packets sent, " + lost + " lost, " + corrupted + " corrupted, "
+            + reordered + " reordered.");
+        for (Connection client : clients) {
+            client.send(result.equals("aborted") ? "CLOSED Simulation aborted" : "FINISH");
+        }
+        for (Connection client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * Puts a packet on the channel from the given client to the other one.
+     */
+    private synchronized void transmit(int source, byte[] contents) {
+        sent++;
+        Random channel = random[source];
+        if (channel.nextDouble() < loss) {
+            lost++;
+            return;
+        }
+        if (contents.length > 0 && channel.nextDouble() < corruption) {
+            int bit = channel.nextInt(contents.length * 8);
+            contents[bit / 8] ^= (byte) (1 << (bit % 8));
+            corrupted++;
+        }
+        int arrival = tick + delay;
+        if (channel.nextDouble() < reorder) {
+            arrival += 1 + channel.nextInt(reorderDelay);
+            reordered++;
+        }
+        inFlight.add(new InFlight(arrival, transmissions++, 1 - source, contents));
+    }
+
+    /**
+     * Handles a message from a client.
+     */
+    private synchronized void handle(int client, String message) {
+        String[] parts = message.split(" ");
+        switch (parts[0]) {
+            case "TRANSMIT":
+                transmit(client, Base64.getDecoder().decode(parts.length > 1 ? parts[1] : ""));
+                break;
+            case "START":
+                if (sender < 0) {
+                    file = Integer.parseInt(parts[1]);
+                    sender = client;
+                }
+                break;
+            case "CHECKSUM":
+                if (parts[1].equals("IN")) {
+                    checksumIn = Long.parseLong(parts[2]);
+                } else {
+                    checksumOut = Long.parseLong(parts[2]);
+                }
+                break;
+            case "CLOSED":
+                closed = true;
+                break;
+            default:
+                break;
+        }
+        notifyAll();
+    }
+
+    /**
+     * A packet on its way to a client.
+     */
+    private static class InFlight implements Comparable<InFlight> {
+        final int arrival;
+        final long order;
+        final int destination;
+        final byte[] contents;
+
+        InFlight(int arrival, long order, int destination, byte[] contents) {
+            this.arrival = arrival;
+            this.order = order;
+            this.destination = destination;
+            this.contents = contents;
+        }
+
+        @Override
+        public int compareTo(InFlight other) {
+            return arrival != other.arrival ? Integer.compare(arrival, other.arrival) : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * The connection with one client, with a thread that reads its messages.
+     */
+    private class Connection extends Thread {
+        private final int id;
+        private final Socket socket;
+        private final BufferedReader input;
+        private final PrintStream output;
+
+        // Whether the client still has to answer the last slot it was offered.
+        private boolean slotPending;
+
+        Connection(int id, Socket socket) throws IOException {
+            super("Client " + id);
+            this.id = id;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            output = new PrintStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            send("REGISTER");
+            String register = read();
+            if (register == null || !register.startsWith("REGISTER")) {
+                throw new IOException("Client did not register");
+            }
+            send("OK");
+        }
+
+        private String read() throws IOException {
+            String line = input.readLine();
+            if (line == null) {
+                return null;
+            }
+            if (!line.startsWith(PROTOCOL + " ")) {
+                throw new IOException("Protocol mismatch with client " + id);
+            }
+            return line.substring(PROTOCOL.length() + 1);
+        }
+
+        synchronized void send(String message) {
+            output.print(PROTOCOL + " " + message + "\n");
+            output.flush();
+        }
+
+        synchronized void offerSlot(int tick) {
+            if (!slotPending) {
+                slotPending = true;
+                send("SLOT " + tick);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                String message;
+                while ((message = read()) != null) {
+                    if (message.startsWith("TRANSMIT") || message.startsWith("NOTRANSMIT")) {
+                        synchronized (this) {
+                            slotPending = false;
+                        }
+                    }
+                    handle(id, message);
+                }
+            } catch (IOException e) {
+                // the client disconnected
+            }
+            handle(id, "CLOSED");
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
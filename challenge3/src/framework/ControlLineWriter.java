@@ -0,0 +1,142 @@
+package framework;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the control lines of a challenge protocol straight to the bytes of the socket.
+ *
+ * Every line is assembled in a reusable buffer, with integers and Base64 payloads encoded in place, and written with
+ * one call, so answering a slot allocates nothing. Lines from several threads do not interleave.
+ */
+public class ControlLineWriter {
+    static final byte[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream output;
+    private final byte[] prefix;
+
+    // The line being assembled.
+    private byte[] buffer = new byte[4096];
+    private int length;
+
+    /**
+     * @param output   the stream to write to, which should not buffer
+     * @param protocol the protocol string every line starts with, such as RDTCHALLENGE/4.0
+     */
+    public ControlLineWriter(OutputStream output, String protocol) {
+        this.output = output;
+        this.prefix = (protocol + " ").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes a message given as text. Allocates, so meant for rare messages.
+     */
+    public synchronized void send(String message) throws IOException {
+        begin();
+        append(message.getBytes(StandardCharsets.US_ASCII));
+        end();
+    }
+
+    /**
+     * Writes a message of fixed bytes, such as NOTRANSMIT.
+     */
+    public synchronized void send(byte[] message) throws IOException {
+        begin();
+        append(message);
+        end();
+    }
+
+    /**
+     * Writes a verb followed by a space and a Base64 encoded payload, such as TRANSMIT with a packet.
+     */
+    public synchronized void sendBase64(byte[] verb, byte[] payload) throws IOException {
+        begin();
+        append(verb);
+        appendByte((byte) ' ');
+        appendBase64(payload);
+        end();
+    }
+
+    /**
+     * Writes a verb followed by a space, a decimal integer, a space and a fixed suffix, such as TRANSMIT 3 DATA.
+     */
+    public synchronized void send(byte[] verb, int number, byte[] suffix) throws IOException {
+        begin();
+        append(verb);
+        appendByte((byte) ' ');
+        appendInt(number);
+        appendByte((byte) ' ');
+        append(suffix);
+        end();
+    }
+
+    private void begin() {
+        length = 0;
+        append(prefix);
+    }
+
+    private void end() throws IOException {
+        appendByte((byte) '\n');
+        output.write(buffer, 0, length);
+        output.flush();
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void appendByte(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+
+    private void appendInt(int number) {
+        ensureCapacity(11);
+        long value = number;
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[length + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void appendBase64(byte[] data) {
+        ensureCapacity((data.length + 2) / 3 * 4);
+        int i = 0;
+        for (; i + 3 <= data.length; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            buffer[length++] = BASE64_ALPHABET[bits >>> 18];
+            buffer[length++] = BASE64_ALPHABET[bits >>> 12 & 0x3f];
+            buffer[length++] = BASE64_ALPHABET[bits >>> 6 & 0x3f];
+            buffer[length++] = BASE64_ALPHABET[bits & 0x3f];
+        }
+        int remaining = data.length - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            buffer[length++] = BASE64_ALPHABET[bits >>> 18];
+            buffer[length++] = BASE64_ALPHABET[bits >>> 12 & 0x3f];
+            buffer[length++] = remaining == 2 ? BASE64_ALPHABET[bits >>> 6 & 0x3f] : (byte) '=';
+            buffer[length++] = '=';
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package framework;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.net.ProtocolException;
 import java.net.Socket;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
 
 /*
  *                                                          *
@@ -26,6 +25,21 @@ import java.util.Scanner;
 public class MACChallengeClient implements Runnable {
     private static String protocolString = "MACCHALLENGE/2.0";
 
+    // verbs and fields of the control messages
+    private static final byte[] FAIL = bytes("FAIL");
+    private static final byte[] INFO = bytes("INFO");
+    private static final byte[] START = bytes("START");
+    private static final byte[] TIMESLOT = bytes("TIMESLOT");
+    private static final byte[] IDLE = bytes("IDLE");
+    private static final byte[] COLLISION = bytes("COLLISION");
+    private static final byte[] SUCCESS = bytes("SUCCESS");
+    private static final byte[] FINISH = bytes("FINISH");
+    private static final byte[] CLOSED = bytes("CLOSED");
+    private static final byte[] TRANSMIT = bytes("TRANSMIT");
+    private static final byte[] DATA = bytes("DATA");
+    private static final byte[] NO_DATA = bytes("NO_DATA");
+    private static final byte[] TRANSMIT_SILENT = bytes("TRANSMIT 0 SILENT");
+
     // server address
     private String host;
 
@@ -41,14 +55,11 @@ public class MACChallengeClient implements Runnable {
     // server socket
     private Socket socket;
 
-    // scanner over socket input stream
-    private Scanner inputScanner;
-
-    // socket output stream
-    private PrintStream outputStream;
+    // parser of the control lines from the socket input stream
+    private ControlLineReader input;
 
-    // currently pending control message from server
-    private String currentControlMessage = null;
+    // writer of the control lines to the socket output stream
+    private ControlLineWriter output;
 
     // protocol implementation for handling timeslot announcements
     private IMACProtocol listener = null;
@@ -89,36 +100,37 @@ public class MACChallengeClient implements Runnable {
      *
      * @throws IOException if the connection failed
      */
-    private void connect() throws IOException, InterruptedException {
+    private void connect() throws IOException {
         try {
             // Open comms
             socket = new Socket(host, port);
-            inputScanner = new Scanner(new BufferedInputStream(
-                    socket.getInputStream()));
-            outputStream = new PrintStream(new BufferedOutputStream(
-                    socket.getOutputStream()));
+            // every control message is flushed on its own, so do not let Nagle hold back a TRANSMIT
+            socket.setTcpNoDelay(true);
+            input = new ControlLineReader(new BufferedInputStream(
+                    socket.getInputStream()), protocolString);
+            output = new ControlLineWriter(socket.getOutputStream(), protocolString);
 
-            if (!getControlMessageBlocking().equals("REGISTER")) {
+            readControlMessage();
+            if (!input.getMessage().equals("REGISTER")) {
                 throw new ProtocolException(
                         "Did not get expected hello from server");
             }
-            clearControlMessage();
 
             // register
             sendControlMessage("REGISTER " + this.groupKey);
 
-            String reply = getControlMessageBlocking();
+            readControlMessage();
+            String reply = input.getMessage();
             if (!reply.equals("OK")) {
                 String reason = reply.substring(reply.indexOf(' ') + 1);
                 throw new ProtocolException("Could not register with server: "
                         + reason);
             }
-            clearControlMessage();
 
             // start handling messages
             eventLoopThread.start();
 
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             throw e;
         }
     }
@@ -171,8 +183,15 @@ public class MACChallengeClient implements Runnable {
         simulationStarted = false;
         simulationFinished = true;
 
-        // stop the message loop
+        // stop the message loop, which may be blocked reading from the socket
         eventLoopThread.interrupt();
+        try {
+            if (eventLoopThread.isAlive()) {
+                socket.shutdownInput();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         try {
             eventLoopThread.join();
         } catch (InterruptedException e) {
@@ -195,59 +214,52 @@ public class MACChallengeClient implements Runnable {
      */
     public void run() {
         boolean stopThread = false;
-        while (!stopThread && !simulationFinished) {
+        while (!stopThread && !simulationFinished && !Thread.currentThread().isInterrupted()) {
             try {
-                String message = getControlMessageBlocking();
+                readControlMessage();
+                int fieldCount = input.getFieldCount();
 
-                if (message.startsWith("FAIL")) {
-                    if (message.split(" ").length > 1) {
+                if (input.startsWith(FAIL)) {
+                    if (fieldCount > 1) {
                         System.err
                                 .println("[SERVER MESSAGE] Failure: "
-                                        + message.substring(message
-                                        .indexOf(' ') + 1));
+                                        + input.getText(1));
                     }
-                    clearControlMessage();
                     stopThread = true;
                     simulationStarted = false;
                     simulationFinished = true;
-                } else if (message.startsWith("INFO")) {
+                } else if (input.startsWith(INFO)) {
                     System.err
                             .println("[SERVER MESSAGE] Info: "
-                                    + message.substring(message
-                                    .indexOf(' ') + 1));
-                } else if (message.startsWith("START")) {
+                                    + (fieldCount > 1 ? input.getText(1) : ""));
+                } else if (input.startsWith(START)) {
                     // start the simulation
                     simulationStarted = true;
-                } else if (message.startsWith("TIMESLOT")) {
+                } else if (input.startsWith(TIMESLOT)) {
                     if (simulationStarted) {
-                        String[] splitMessage = message.split(" ");
-
                         TransmissionInfo transmissionInfo = null;
                         int queueLength = 0;
 
                         // slot was idle
-                        if (splitMessage.length == 4
-                                && splitMessage[1].equals("IDLE")) {
-                            queueLength = Integer.parseInt(splitMessage[3]);
+                        if (fieldCount == 4 && input.fieldEquals(1, IDLE)) {
+                            queueLength = input.getInt(3);
                             transmissionInfo = listener.TimeslotAvailable(
                                     MediumState.Idle, 0, queueLength);
                         }
 
                         // slot was collision
-                        if (splitMessage.length == 4
-                                && splitMessage[1].equals("COLLISION")) {
-                            queueLength = Integer.parseInt(splitMessage[3]);
+                        if (fieldCount == 4 && input.fieldEquals(1, COLLISION)) {
+                            queueLength = input.getInt(3);
                             transmissionInfo = listener.TimeslotAvailable(
                                     MediumState.Collision, 0, queueLength);
                         }
 
                         // slot was succesful
-                        if (splitMessage.length == 5
-                                && splitMessage[1].equals("SUCCESS")) {
-                            queueLength = Integer.parseInt(splitMessage[4]);
+                        if (fieldCount == 5 && input.fieldEquals(1, SUCCESS)) {
+                            queueLength = input.getInt(4);
                             transmissionInfo = listener.TimeslotAvailable(
                                     MediumState.Succes,
-                                    Integer.parseInt(splitMessage[2]),
+                                    input.getInt(2),
                                     queueLength);
                         }
 
@@ -258,39 +270,31 @@ public class MACChallengeClient implements Runnable {
                                     throw new IllegalStateException(
                                             "Cannot transmit data without packets in the queue.");
                                 }
-                                sendControlMessage("TRANSMIT "
-                                        + transmissionInfo
-                                        .GetControlInformation()
-                                        + " DATA");
+                                output.send(TRANSMIT, transmissionInfo.GetControlInformation(), DATA);
                             }
                             if (transmissionInfo.GetTransmissionType() == TransmissionType.NoData) {
-                                sendControlMessage("TRANSMIT "
-                                        + transmissionInfo
-                                        .GetControlInformation()
-                                        + " NO_DATA");
+                                output.send(TRANSMIT, transmissionInfo.GetControlInformation(), NO_DATA);
                             }
                             if (transmissionInfo.GetTransmissionType() == TransmissionType.Silent) {
-                                sendControlMessage("TRANSMIT 0 SILENT");
+                                output.send(TRANSMIT_SILENT);
                             }
                         }
                     }
-                } else if (message.startsWith("FINISH") || message.startsWith("CLOSED")) {
+                } else if (input.startsWith(FINISH) || input.startsWith(CLOSED)) {
                     simulationStarted = false;
                     simulationFinished = true;
 
-                    if (message.split(" ").length > 1) {
+                    if (fieldCount > 1) {
                         System.err.println("[SERVER MESSAGE] Connection closed: "
-                                + message.substring(message
-                                .indexOf(' ') + 1));
+                                + input.getText(1));
                     }
                 }
-
-                clearControlMessage();
-
-                Thread.sleep(1);
             } catch (ProtocolException ignored) {
-            } catch (InterruptedException e) {
+            } catch (EOFException e) {
+                // the server closed the connection, or stop() shut down the input
                 stopThread = true;
+                simulationStarted = false;
+                simulationFinished = true;
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -298,54 +302,20 @@ public class MACChallengeClient implements Runnable {
     }
 
     /**
-     * Waits for a control message from the server
+     * Waits for a control message from the server, which can then be inspected through the input reader
      *
-     * @return the message
      * @throws ProtocolException if a corrupt message was received
+     * @throws EOFException      if the connection was closed
      */
-    private String getControlMessageBlocking() throws InterruptedException, IOException {
-        try {
-            // Block while waiting for message
-            String controlMessage = getControlMessage();
-            while (controlMessage == null) {
-                Thread.sleep(10);
-                controlMessage = getControlMessage();
-            }
-            return controlMessage;
-        } catch (Exception e) {
-            throw e;
+    private void readControlMessage() throws IOException {
+        // Block while waiting for message
+        if (simulationFinished || !input.next()) {
+            throw new EOFException("Connection closed");
         }
-
     }
 
-    /**
-     * Removes the first message from the queue Call this when you have
-     * processed a message
-     */
-    private void clearControlMessage() {
-        this.currentControlMessage = null;
-    }
-
-    /**
-     * Obtains a message from the server, if any exists.
-     *
-     * @return the message, null if no message was present
-     * @throws IOException
-     */
-    private synchronized String getControlMessage() throws IOException {
-        if (!simulationFinished) {
-            if (this.currentControlMessage == null
-                    && inputScanner.hasNextLine()) {
-                String line = inputScanner.nextLine();
-                if (line.startsWith(protocolString)) {
-                    this.currentControlMessage = line.substring(protocolString
-                            .length() + 1);
-                } else {
-                    throw new ProtocolException("Protocol mismatch with server");
-                }
-            }
-        }
-        return this.currentControlMessage;
+    private static byte[] bytes(String verb) {
+        return verb.getBytes(StandardCharsets.US_ASCII);
     }
 
     /**
@@ -354,8 +324,10 @@ public class MACChallengeClient implements Runnable {
      * @param message
      */
     private void sendControlMessage(String message) {
-        outputStream.print(protocolString + " " + message + "\n");
-        outputStream.flush();
-
+        try {
+            output.send(message);
+        } catch (IOException e) {
+            // a broken connection shows up on the reading side
+        }
     }
 }
@@ -3,11 +3,9 @@ package my_protocol;
 import framework.IMACProtocol;
 import framework.MediumState;
 import framework.TransmissionInfo;
-import framework.TransmissionType;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /**
  * A fairly trivial Medium Access Control scheme.
@@ -27,8 +25,12 @@ import java.util.Random;
  */
 public class ChannelProtocol implements IMACProtocol {
 
+	// The number of clients sharing the medium when no other number is given.
 	public static final int MAX_CLIENTS = 4;
 
+	// The number of clients sharing the medium, which all have to take part in the handshake.
+	private final int maxClients;
+
 	private int slot = -1;
 	private int activeClients = 1;
 	private int turnOrder = 0;
@@ -36,14 +38,42 @@ public class ChannelProtocol implements IMACProtocol {
 	private boolean numbersVerified = false;
 	private boolean sending = false;
 
-	ArrayList<Integer> verifier;
+	// The random numbers of the clients received during the handshake, the first verified of them.
+	private final int[] verifier;
+	private int verified;
+
+	private final SplittableRandom random;
 
 	/**
 	 * Simple constructor to make sure the initial clientnumbers can be handed out.
 	 */
 	public ChannelProtocol() {
-		clientNumber = new Random().nextInt((int) Math.pow(2,8)) + 1;
-		verifier = new ArrayList<>();
+		this(MAX_CLIENTS);
+	}
+
+	/**
+	 * @param maxClients the number of clients sharing the medium
+	 */
+	public ChannelProtocol(int maxClients) {
+		this(maxClients, new SplittableRandom());
+	}
+
+	/**
+	 * @param random the source of the random client numbers, so a simulation can be repeated
+	 */
+	public ChannelProtocol(SplittableRandom random) {
+		this(MAX_CLIENTS, random);
+	}
+
+	/**
+	 * @param maxClients the number of clients sharing the medium
+	 * @param random     the source of the random client numbers, so a simulation can be repeated
+	 */
+	public ChannelProtocol(int maxClients, SplittableRandom random) {
+		this.maxClients = maxClients;
+		this.random = random;
+		clientNumber = random.nextInt(1 << 8) + 1;
+		verifier = new int[maxClients];
 	}
 
 	@Override
@@ -56,10 +86,10 @@ public class ChannelProtocol implements IMACProtocol {
 		} else {
 			// Run the protocol
 
-			// When a collision occurs reset the system state to MAX_CLIENTS amount of channels. Reset the turnOrder as
+			// When a collision occurs reset the system state to maxClients amount of channels. Reset the turnOrder as
 			// well.
 			if (previousMediumState == MediumState.Collision) {
-				activeClients = MAX_CLIENTS;
+				activeClients = maxClients;
 				turnOrder = clientNumber;
 			}
 
@@ -72,14 +102,14 @@ public class ChannelProtocol implements IMACProtocol {
 			if (localQueueLength == 0) {
 				// No data to send, just be quiet
 				sending = false;
-				System.out.println("SLOT " + slot + " - No data to send. clientNumber: " + clientNumber);
-				return new TransmissionInfo(TransmissionType.Silent, 0);
+				SlotLogger.log(slot, "No data to send.", clientNumber);
+				return Transmissions.silent();
 			} else if (!sending) {
 				// Only run this once when it gets new data to send. Will probably result in a collision. But this is
 				// needed to reset the system and the amount of channels.
 				sending = true;
 				activeClients++;
-				return new TransmissionInfo(TransmissionType.Data, clientNumber);
+				return Transmissions.data(clientNumber);
 			}
 
 			// If the program arrived here it means it is already on a sending spree and nothing noteworthy has happened
@@ -94,11 +124,11 @@ public class ChannelProtocol implements IMACProtocol {
 	 */
 	private TransmissionInfo sendOnTurn() {
 		if (slot % activeClients == turnOrder) {
-			System.out.println("SLOT " + slot + " - Sending data because it is my turn. clientNumber: " + turnOrder);
-			return new TransmissionInfo(TransmissionType.Data, clientNumber);
+			SlotLogger.log(slot, "Sending data because it is my turn.", turnOrder);
+			return Transmissions.data(clientNumber);
 		} else {
-			System.out.println("SLOT " + slot + " - Not sending data because it is not my turn. clientNumber: " + turnOrder);
-			return new TransmissionInfo(TransmissionType.Silent, 0);
+			SlotLogger.log(slot, "Not sending data because it is not my turn.", turnOrder);
+			return Transmissions.silent();
 		}
 	}
 
@@ -122,24 +152,36 @@ public class ChannelProtocol implements IMACProtocol {
 	 */
 	private TransmissionInfo verifyClientNumbers(int controlInformation) {
 		// Receive random number
-		if (controlInformation != 0) {
-			verifier.add(controlInformation);
+		if (controlInformation != 0 && verified < verifier.length) {
+			verifier[verified++] = controlInformation;
 		}
-		if (verifier.size() != MAX_CLIENTS) {
+		if (verified != maxClients) {
 			// Not all numbers are received yet
-			if (!verifier.contains(clientNumber)) {
+			if (indexOf(clientNumber) < 0) {
 				// My number is not received yet, use ALOHA with chance based on missing numbers.
-				if (new Random().nextInt(100) < 100 / (MAX_CLIENTS - verifier.size())) {
-					return new TransmissionInfo(TransmissionType.NoData, clientNumber);
+				if (random.nextInt(100) < 100 / (maxClients - verified)) {
+					return Transmissions.noData(clientNumber);
 				}
 			}
 		} else {
 			// Everything is verified, time to decide the order.
 			numbersVerified = true;
-			Collections.sort(verifier);
-			clientNumber = verifier.indexOf(clientNumber);
+			Arrays.sort(verifier);
+			clientNumber = indexOf(clientNumber);
 		}
 		// Be silent if not sending.
-		return new TransmissionInfo(TransmissionType.Silent, 0);
+		return Transmissions.silent();
+	}
+
+	/**
+	 * Returns the position of a random number among the verified ones, -1 if it was not received.
+	 */
+	private int indexOf(int number) {
+		for (int i = 0; i < verified; i++) {
+			if (verifier[i] == number) {
+				return i;
+			}
+		}
+		return -1;
 	}
 }
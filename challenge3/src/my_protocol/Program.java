@@ -22,11 +22,11 @@ public class Program {
     // Change to your protocol implementation
     private static IMACProtocol protocol = new ChannelProtocol();
 
-    // Challenge server address
-    private static String serverAddress = "networkingchallenges.ewi.utwente.nl";
+    // Challenge server address, overridden by -Dchallenge.server (use localhost for the simulator package)
+    private static String serverAddress = System.getProperty("challenge.server", "networkingchallenges.ewi.utwente.nl");
 
-    // Challenge server port
-    private static int serverPort = 8003;
+    // Challenge server port, overridden by -Dchallenge.port
+    private static int serverPort = Integer.getInteger("challenge.port", 8003);
 
     /*
      *
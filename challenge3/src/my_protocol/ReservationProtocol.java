@@ -0,0 +1,258 @@
+package my_protocol;
+
+import framework.IMACProtocol;
+import framework.MediumState;
+import framework.TransmissionInfo;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Reservation based MAC protocol for any number of clients, up to {@value #MAXCLIENTS}.
+ *
+ * Every packet carries an announcement in its control information: the id of the sender and how many packets it has
+ * left, as a level of {@value #LEVELBITS} bits (0 for none, otherwise one more than the base 2 logarithm). All clients
+ * see the same medium states and announcements, so they all keep the same table of members and their levels without
+ * ever talking about it, and derive the same schedule from it: the slots go round robin to the members that announced
+ * packets left, which is a TDMA schedule without collisions that only includes the clients that need it. A member
+ * whose last packet is sent, or that leaves its slot idle, is skipped from then on, so its slots go to the others.
+ *
+ * The turns are weighted by backlog, deficit round robin style: a member gets a turn of as many consecutive slots as
+ * the lower bound of its announced level (1, 2, 4, ... packets), at most maxQuantum, so a member with a long queue
+ * drains faster than one with a few packets and the total queueing delay drops. As the quanta are whole slots no
+ * deficit is carried over to the next turn. A maxQuantum of 1 gives every member one slot per turn, plain round
+ * robin.
+ *
+ * Clients without an id, and members that went idle and have packets again, contend for the slots that are not
+ * reserved: every slot while no member has packets, and otherwise one slot after every contentionInterval reserved
+ * slots. The interval doubles up to {@value #MAXCONTENTIONINTERVAL} while nobody contends and drops back to
+ * {@value #MINCONTENTIONINTERVAL} as soon as someone does, so the reservations lose little to contention under load.
+ * Contenders transmit with probability 1 / contenders, where contenders is a shared estimate of their number that
+ * goes up after a collision and down after any other contention slot (pseudo-Bayesian broadcast). A client that wins
+ * a contention slot without an id takes the lowest free one.
+ *
+ * Should the clients disagree, for example because one started late, there will be a collision in a reserved slot.
+ * Everybody sees it and starts over with an empty table, which brings them back in step.
+ */
+public class ReservationProtocol implements IMACProtocol {
+
+    // change the following as you wish:
+    // The fewest and the most reserved slots between two contention slots.
+    static final int MINCONTENTIONINTERVAL = 2;
+    static final int MAXCONTENTIONINTERVAL = 64;
+
+    // The most consecutive slots a member gets in a turn, unless given otherwise. Must be the same on all clients.
+    public static final int MAXQUANTUM = 8;
+
+    // Layout of the control information: the id of the sender in the lowest bits, followed by its queue level.
+    static final int IDBITS = 8;
+    static final int MAXCLIENTS = 1 << IDBITS;
+    static final int LEVELBITS = 4;
+    static final int MAXLEVEL = (1 << LEVELBITS) - 1;
+
+    // How much the estimated number of contenders grows after a collision, 1 / (e - 2).
+    private static final double CONTENDERS_INCREMENT = 1 / (Math.E - 2);
+
+    // The owner of a slot that is not reserved.
+    private static final int CONTENTION = -1;
+
+    // Shared state, which only depends on what happened on the medium.
+    // The queue level every member announced last, 0 if it has nothing to send. Ids below members are taken.
+    private final int[] levels = new int[MAXCLIENTS];
+    private int members;
+    private int activeMembers;
+    // The member that had the last reserved slot, -1 if none since the start, and how many slots its turn has left.
+    private int cursor = -1;
+    private int turnLeft;
+    private double contenders = 1;
+    private int contentionInterval = MINCONTENTIONINTERVAL;
+    private int reservedSinceContention;
+
+    // The id of this client, -1 if it has none.
+    private int id = -1;
+
+    // The owner of the previous slot and whether this client transmitted in it.
+    private int previousOwner = CONTENTION;
+    private boolean transmitted;
+
+    private int slot = -1;
+
+    private final int maxQuantum;
+
+    private final SplittableRandom random;
+
+    public ReservationProtocol() {
+        this(MAXQUANTUM);
+    }
+
+    /**
+     * @param maxQuantum the most consecutive slots a member gets in a turn, 1 for plain round robin. Must be the same
+     *                   on all clients.
+     */
+    public ReservationProtocol(int maxQuantum) {
+        this(maxQuantum, new SplittableRandom());
+    }
+
+    /**
+     * @param random the source of the contention decisions, so a simulation can be repeated
+     */
+    public ReservationProtocol(SplittableRandom random) {
+        this(MAXQUANTUM, random);
+    }
+
+    /**
+     * @param maxQuantum the most consecutive slots a member gets in a turn, 1 for plain round robin. Must be the same
+     *                   on all clients.
+     * @param random     the source of the contention decisions, so a simulation can be repeated
+     */
+    public ReservationProtocol(int maxQuantum, SplittableRandom random) {
+        this.maxQuantum = Math.max(1, maxQuantum);
+        this.random = random;
+    }
+
+    @Override
+    public TransmissionInfo TimeslotAvailable(MediumState previousMediumState,
+                                              int controlInformation, int localQueueLength) {
+        slot++;
+        learn(previousMediumState, controlInformation);
+
+        int owner = nextOwner();
+        previousOwner = owner;
+        transmitted = false;
+
+        if (owner != CONTENTION) {
+            reservedSinceContention++;
+            if (owner != id) {
+                SlotLogger.log(slot, "Not sending data because the slot is reserved for another member.", owner);
+                return Transmissions.silent();
+            }
+            if (localQueueLength == 0) {
+                // cannot happen while the table is right; staying silent makes everybody skip this client
+                SlotLogger.log(slot, "No data to send in my reserved slot.", id);
+                return Transmissions.silent();
+            }
+            SlotLogger.log(slot, "Sending data in my reserved slot.", id);
+            transmitted = true;
+            return Transmissions.data(announce(id, localQueueLength - 1));
+        }
+
+        reservedSinceContention = 0;
+        boolean needsSlots = localQueueLength > 0 && (id >= 0 ? levels[id] == 0 : members < MAXCLIENTS);
+        if (needsSlots && random.nextDouble() * contenders < 1) {
+            SlotLogger.log(slot, "Contending for a reservation.", id);
+            transmitted = true;
+            // a client without an id claims the lowest free one
+            return Transmissions.data(announce(id >= 0 ? id : members, localQueueLength - 1));
+        }
+        SlotLogger.log(slot, "Not contending.", id);
+        return Transmissions.silent();
+    }
+
+    /**
+     * Updates the shared state with what happened in the previous slot.
+     */
+    private void learn(MediumState state, int controlInformation) {
+        int sender = controlInformation & (MAXCLIENTS - 1);
+        int level = (controlInformation >>> IDBITS) & MAXLEVEL;
+
+        if (previousOwner != CONTENTION) {
+            cursor = previousOwner;
+            turnLeft--;
+            if (state == MediumState.Idle) {
+                setLevel(previousOwner, 0);
+            } else if (state == MediumState.Succes && sender == previousOwner) {
+                setLevel(previousOwner, level);
+            } else {
+                // somebody else used a reserved slot, so the clients disagree about the table
+                reset();
+            }
+            return;
+        }
+
+        switch (state) {
+            case Idle:
+                contenders = Math.max(1, contenders - 1);
+                contentionInterval = Math.min(2 * contentionInterval, MAXCONTENTIONINTERVAL);
+                break;
+            case Collision:
+                contenders += CONTENDERS_INCREMENT;
+                contentionInterval = MINCONTENTIONINTERVAL;
+                break;
+            case Succes:
+                contenders = Math.max(1, contenders - 1);
+                contentionInterval = MINCONTENTIONINTERVAL;
+                if (sender > members) {
+                    // an id that was not free in this table
+                    reset();
+                    return;
+                }
+                if (sender == members) {
+                    members++;
+                }
+                if (transmitted) {
+                    id = sender;
+                }
+                setLevel(sender, level);
+                break;
+        }
+    }
+
+    /**
+     * @return the member the current slot is reserved for, or CONTENTION
+     */
+    private int nextOwner() {
+        if (activeMembers == 0 || reservedSinceContention >= contentionInterval) {
+            return CONTENTION;
+        }
+        // the current turn goes on until its quantum is used or the member has nothing left
+        if (cursor >= 0 && turnLeft > 0 && levels[cursor] > 0) {
+            return cursor;
+        }
+        for (int i = 1; i <= members; i++) {
+            int member = Math.floorMod(cursor + i, members);
+            if (levels[member] > 0) {
+                turnLeft = getQuantum(levels[member]);
+                return member;
+            }
+        }
+        return CONTENTION;
+    }
+
+    /**
+     * @return the length of a turn of a member with the given queue level: the fewest packets the level stands for,
+     * at most maxQuantum
+     */
+    private int getQuantum(int level) {
+        return Math.min(maxQuantum, 1 << Math.min(level - 1, 30));
+    }
+
+    private void setLevel(int member, int level) {
+        if ((levels[member] > 0) != (level > 0)) {
+            activeMembers += level > 0 ? 1 : -1;
+        }
+        levels[member] = level;
+    }
+
+    /**
+     * Forgets all members, including the id of this client. Every client that still has data contends again.
+     */
+    private void reset() {
+        contenders = Math.max(1, members);
+        Arrays.fill(levels, 0);
+        members = 0;
+        activeMembers = 0;
+        cursor = -1;
+        turnLeft = 0;
+        id = -1;
+        contentionInterval = MINCONTENTIONINTERVAL;
+        reservedSinceContention = 0;
+    }
+
+    /**
+     * @return the control information that announces the given member and the packets it has left
+     */
+    static int announce(int member, int queueLength) {
+        int level = queueLength == 0 ? 0 : Math.min(MAXLEVEL, 32 - Integer.numberOfLeadingZeros(queueLength));
+        return member | level << IDBITS;
+    }
+}
@@ -0,0 +1,34 @@
+package my_protocol;
+
+/**
+ * Prints what a protocol decided in a slot, if enabled with {@code -Dmac.log=true}.
+ *
+ * Logging is off by default, because printing a line every slot takes far longer than the decision itself. The
+ * methods take the variable parts as separate arguments instead of a concatenated string, so a disabled call costs a
+ * test of a constant and no allocation.
+ */
+public final class SlotLogger {
+
+    public static final boolean ENABLED = Boolean.getBoolean("mac.log");
+
+    private SlotLogger() {
+    }
+
+    /**
+     * Prints "SLOT - message".
+     */
+    public static void log(String message) {
+        if (ENABLED) {
+            System.out.println("SLOT - " + message);
+        }
+    }
+
+    /**
+     * Prints "SLOT slot - message clientNumber: clientNumber".
+     */
+    public static void log(int slot, String message, int clientNumber) {
+        if (ENABLED) {
+            System.out.println("SLOT " + slot + " - " + message + " clientNumber: " + clientNumber);
+        }
+    }
+}
@@ -3,9 +3,8 @@ package my_protocol;
 import framework.IMACProtocol;
 import framework.MediumState;
 import framework.TransmissionInfo;
-import framework.TransmissionType;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * A fairly trivial Medium Access Control scheme.
@@ -25,22 +24,57 @@ import java.util.Random;
  */
 public class SlottedAlohaSimplified implements IMACProtocol {
 
+    // The transmit probability in percent when no other one is given.
+    public static final int DEFAULT_PROBABILITY = 25;
+
+    // The probability in percent to transmit in a slot while there is data to send.
+    private final int probability;
+
+    private final SplittableRandom random;
+
+    public SlottedAlohaSimplified() {
+        this(DEFAULT_PROBABILITY);
+    }
+
+    /**
+     * @param probability the probability in percent to transmit in a slot while there is data to send
+     */
+    public SlottedAlohaSimplified(int probability) {
+        this(probability, new SplittableRandom());
+    }
+
+    /**
+     * @param random the source of the random decisions, so a simulation can be repeated
+     */
+    public SlottedAlohaSimplified(SplittableRandom random) {
+        this(DEFAULT_PROBABILITY, random);
+    }
+
+    /**
+     * @param probability the probability in percent to transmit in a slot while there is data to send
+     * @param random      the source of the random decisions, so a simulation can be repeated
+     */
+    public SlottedAlohaSimplified(int probability, SplittableRandom random) {
+        this.probability = probability;
+        this.random = random;
+    }
+
     @Override
     public TransmissionInfo TimeslotAvailable(MediumState previousMediumState,
                                               int controlInformation, int localQueueLength) {
         // No data to send, just be quiet
         if (localQueueLength == 0) {
-            System.out.println("SLOT - No data to send.");
-            return new TransmissionInfo(TransmissionType.Silent, 0);
+            SlotLogger.log("No data to send.");
+            return Transmissions.silent();
         }
 
-        // Randomly transmit with 60% probability
-        if (new Random().nextInt(100) < 25) {
-            System.out.println("SLOT - Sending data and hope for no collision.");
-            return new TransmissionInfo(TransmissionType.Data, 0);
+        // Randomly transmit with the configured probability
+        if (random.nextInt(100) < probability) {
+            SlotLogger.log("Sending data and hope for no collision.");
+            return Transmissions.data(0);
         } else {
-            System.out.println("SLOT - Not sending data to give room for others.");
-            return new TransmissionInfo(TransmissionType.Silent, 0);
+            SlotLogger.log("Not sending data to give room for others.");
+            return Transmissions.silent();
         }
 
     }
@@ -0,0 +1,60 @@
+package my_protocol;
+
+import framework.TransmissionInfo;
+import framework.TransmissionType;
+
+/**
+ * Shared instances of TransmissionInfo, so deciding what to do in a slot does not allocate.
+ *
+ * TransmissionInfo cannot be changed after it is created, so one instance per transmission type and control value
+ * can be handed out for every slot. The instances for the control values below {@value #CACHED} are created up front,
+ * which covers the client numbers and announcements the protocols send; other values get a new instance.
+ */
+public final class Transmissions {
+
+    // The number of control values with a shared instance, from 0: every announcement of ReservationProtocol.
+    static final int CACHED = 1 << (ReservationProtocol.IDBITS + ReservationProtocol.LEVELBITS);
+
+    private static final TransmissionInfo SILENT = new TransmissionInfo(TransmissionType.Silent, 0);
+    private static final TransmissionInfo[] DATA = create(TransmissionType.Data);
+    private static final TransmissionInfo[] NODATA = create(TransmissionType.NoData);
+
+    private Transmissions() {
+    }
+
+    /**
+     * @return an instruction to stay silent
+     */
+    public static TransmissionInfo silent() {
+        return SILENT;
+    }
+
+    /**
+     * @return an instruction to send a packet with the given control information
+     */
+    public static TransmissionInfo data(int controlInformation) {
+        return get(DATA, TransmissionType.Data, controlInformation);
+    }
+
+    /**
+     * @return an instruction to send only the given control information
+     */
+    public static TransmissionInfo noData(int controlInformation) {
+        return get(NODATA, TransmissionType.NoData, controlInformation);
+    }
+
+    private static TransmissionInfo get(TransmissionInfo[] cache, TransmissionType type, int controlInformation) {
+        if (controlInformation >= 0 && controlInformation < cache.length) {
+            return cache[controlInformation];
+        }
+        return new TransmissionInfo(type, controlInformation);
+    }
+
+    private static TransmissionInfo[] create(TransmissionType type) {
+        TransmissionInfo[] cache = new TransmissionInfo[CACHED];
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new TransmissionInfo(type, i);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,93 @@
+package simulator;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that MAC protocols allocate nothing per slot, by measuring the bytes the thread allocates during
+ * {@link MACSlotSimulator} runs.
+ *
+ * A protocol and the simulator allocate a fixed amount when a run starts, for the instances of the protocol and their
+ * tables, so every protocol is run twice with a different number of slots and the difference in allocated bytes is
+ * divided by the difference in slots. A run before the measured ones gives the JIT the chance to compile the slot
+ * path. The bytes allocated by the current thread are reported by the JVM through
+ * {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}.
+ *
+ * The check is configured with name=value arguments, for example
+ * {@code java simulator.MACAllocationCheck protocols=my_protocol.ChannelProtocol clients=8}:
+ * <ul>
+ * <li>protocols: the classes of the protocols to check, separated by commas, my_protocol.SlottedAlohaSimplified,
+ * my_protocol.ChannelProtocol and my_protocol.ReservationProtocol by default</li>
+ * <li>clients: the number of clients sharing the medium, 4 by default</li>
+ * <li>slots: the number of slots of the shorter measured run, the longer one has ten times as many, 1000000 by
+ * default</li>
+ * </ul>
+ * The exit status is 1 if a protocol allocated in the slots, so the check can run after every change of the protocols.
+ */
+public class MACAllocationCheck {
+
+    // The most bytes per slot that still count as nothing, for the odd allocation of the JVM itself in the thread.
+    private static final double TOLERANCE = 0.01;
+
+    private String[] protocols = {"my_protocol.SlottedAlohaSimplified", "my_protocol.ChannelProtocol",
+        "my_protocol.ReservationProtocol"};
+    private int clients = 4;
+    private long slots = 1_000_000;
+
+    public static void main(String[] args) {
+        MACAllocationCheck check = new MACAllocationCheck();
+        for (String arg : args) {
+            check.configure(arg);
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("[ALLOCATION] This JVM cannot measure the bytes a thread allocates.");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        boolean allocating = false;
+        for (String protocol : check.protocols) {
+            check.run(threads, protocol, check.slots);
+            long shortRun = check.run(threads, protocol, check.slots);
+            long longRun = check.run(threads, protocol, 10 * check.slots);
+            double perSlot = Math.max(0, (double) (longRun - shortRun) / (9 * check.slots));
+            boolean ok = perSlot <= TOLERANCE;
+            allocating |= !ok;
+            System.out.printf("[ALLOCATION] %s: %.4f bytes per slot, %d bytes per run (%s).%n",
+                protocol, perSlot, shortRun, ok ? "nothing allocated per slot" : "ALLOCATES");
+        }
+        System.exit(allocating ? 1 : 0);
+    }
+
+    /**
+     * Applies one name=value argument.
+     */
+    private void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "protocols": protocols = value.split(","); break;
+            case "clients": clients = Integer.parseInt(value); break;
+            case "slots": slots = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    /**
+     * @return the bytes the current thread allocated to simulate the given number of slots, setup included
+     */
+    private long run(com.sun.management.ThreadMXBean threads, String protocol, long slots) {
+        MACSlotSimulator simulator = new MACSlotSimulator();
+        simulator.configure("protocol=" + protocol);
+        simulator.configure("clients=" + clients);
+        simulator.configure("slots=" + slots);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        simulator.run();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+}
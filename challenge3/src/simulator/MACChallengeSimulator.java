@@ -0,0 +1,292 @@
+package simulator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+
+/**
+ * Local stand-in for the MAC challenge server, so protocols can be measured without the university server.
+ *
+ * It speaks MACCHALLENGE/2.0 to a number of clients that share one medium: it waits for all of them to register and
+ * starts the simulation when one requests it. In every slot all clients are told what happened on the medium in the
+ * previous slot and how many packets they have queued, and are asked what to transmit. A slot in which exactly one
+ * client transmits is a success, and delivers a packet if the client sent data; more transmitters collide. At the end
+ * the simulator prints the fraction of slots that delivered data and how many packets every client delivered.
+ *
+ * The simulation is configured with name=value arguments, for example
+ * {@code java simulator.MACChallengeSimulator clients=4 arrival=0.2 seed=42}:
+ * <ul>
+ * <li>port: the port to listen on, 8003 by default</li>
+ * <li>clients: the number of clients sharing the medium, 4 by default</li>
+ * <li>slots: the number of slots to simulate, 1000 by default</li>
+ * <li>slot: the minimum length of a slot in milliseconds, 0 by default</li>
+ * <li>packets: the number of packets in every queue at the start, 0 by default</li>
+ * <li>arrival: the probability that a packet is added to a queue in a slot, 0.25 by default</li>
+ * <li>seed: the seed of the packet arrivals, so runs can be repeated</li>
+ * </ul>
+ * The clients are pointed at the simulator with {@code -Dchallenge.server=localhost}.
+ */
+public class MACChallengeSimulator {
+    private static final String PROTOCOL = "MACCHALLENGE/2.0";
+
+    // How long to wait for a client to answer a slot before treating it as silent.
+    private static final long ANSWER_TIMEOUT = 1000;
+
+    private int port = 8003;
+    private int clientCount = 4;
+    private int slots = 1000;
+    private long slotMillis = 0;
+    private int initialPackets = 0;
+    private double arrival = 0.25;
+    private long seed = 1;
+
+    private Connection[] clients;
+    private boolean startRequested;
+    private boolean closed;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        MACChallengeSimulator simulator = new MACChallengeSimulator();
+        for (String arg : args) {
+            simulator.configure(arg);
+        }
+        simulator.run();
+    }
+
+    /**
+     * Applies one name=value argument.
+     */
+    private void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "port": port = Integer.parseInt(value); break;
+            case "clients": clientCount = Integer.parseInt(value); break;
+            case "slots": slots = Integer.parseInt(value); break;
+            case "slot": slotMillis = Long.parseLong(value); break;
+            case "packets": initialPackets = Integer.parseInt(value); break;
+            case "arrival": arrival = Double.parseDouble(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        clients = new Connection[clientCount];
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("[SIMULATOR] Waiting for " + clientCount + " clients on port " + port + "...");
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Connection(i, server.accept());
+                clients[i].queueLength = initialPackets;
+                System.out.println("[SIMULATOR] Client " + i + " registered.");
+            }
+        }
+        for (Connection client : clients) {
+            client.start();
+        }
+
+        synchronized (this) {
+            while (!startRequested && !closed) {
+                wait();
+            }
+        }
+        for (Connection client : clients) {
+            client.send("START");
+        }
+        System.out.println("[SIMULATOR] Simulation started.");
+
+        Random arrivals = new Random(seed);
+        int idle = 0;
+        int collisions = 0;
+        int delivered = 0;
+        int noData = 0;
+
+        // what happened in the previous slot
+        String state = "IDLE";
+        int controlInformation = 0;
+
+        int slot;
+        for (slot = 0; slot < slots && !isClosed(); slot++) {
+            for (Connection client : clients) {
+                if (arrivals.nextDouble() < arrival) {
+                    client.queueLength++;
+                }
+            }
+
+            for (Connection client : clients) {
+                client.ask(state.equals("SUCCESS")
+                    ? "TIMESLOT SUCCESS " + controlInformation + " " + slot + " " + client.queueLength
+                    : "TIMESLOT " + state + " " + slot + " " + client.queueLength);
+            }
+
+            // collect the answers and find out what happened on the medium
+            Connection transmitter = null;
+            int transmitters = 0;
+            boolean data = false;
+            for (Connection client : clients) {
+                String answer = client.awaitAnswer(ANSWER_TIMEOUT);
+                String[] parts = answer == null ? new String[0] : answer.split(" ");
+                if (parts.length == 3 && parts[0].equals("TRANSMIT") && !parts[2].equals("SILENT")) {
+                    transmitters++;
+                    transmitter = client;
+                    controlInformation = Integer.parseInt(parts[1]);
+                    data = parts[2].equals("DATA") && client.queueLength > 0;
+                }
+            }
+
+            if (transmitters == 0) {
+                state = "IDLE";
+                idle++;
+            } else if (transmitters > 1) {
+                state = "COLLISION";
+                collisions++;
+            } else {
+                state = "SUCCESS";
+                if (data) {
+                    transmitter.queueLength--;
+                    transmitter.delivered++;
+                    delivered++;
+                } else {
+                    noData++;
+                }
+            }
+
+            if (slotMillis > 0) {
+                Thread.sleep(slotMillis);
+            }
+        }
+
+        System.out.printf("[SIMULATOR] %d slots: %d delivered data (%.1f%%), %d without data, %d idle, %d collisions.%n",
+            slot, delivered, slot == 0 ? 0 : 100.0 * delivered / slot, noData, idle, collisions);
+        for (Connection client : clients) {
+            System.out.println("[SIMULATOR] Client " + client.id + " delivered " + client.delivered
+                + " packets, " + client.queueLength + " left in its queue.");
+        }
+        for (Connection client : clients) {
+            client.send("FINISH");
+            client.close();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The connection with one client, with a thread that reads its messages.
+     */
+    private class Connection extends Thread {
+        private final int id;
+        private final Socket socket;
+        private final BufferedReader input;
+        private final PrintStream output;
+
+        // The answer to the current slot, null while the client has not answered.
+        private String answer;
+
+        // The packets of this client waiting to be sent, and the packets it delivered.
+        int queueLength;
+        int delivered;
+
+        Connection(int id, Socket socket) throws IOException {
+            super("Client " + id);
+            this.id = id;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            output = new PrintStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            send("REGISTER");
+            String register = read();
+            if (register == null || !register.startsWith("REGISTER")) {
+                throw new IOException("Client did not register");
+            }
+            send("OK");
+        }
+
+        private String read() throws IOException {
+            String line = input.readLine();
+            if (line == null) {
+                return null;
+            }
+            if (!line.startsWith(PROTOCOL + " ")) {
+                throw new IOException("Protocol mismatch with client " + id);
+            }
+            return line.substring(PROTOCOL.length() + 1);
+        }
+
+        synchronized void send(String message) {
+            output.print(PROTOCOL + " " + message + "\n");
+            output.flush();
+        }
+
+        /**
+         * Announces a slot, forgetting any late answer to the previous one.
+         */
+        synchronized void ask(String message) {
+            answer = null;
+            send(message);
+        }
+
+        /**
+         * @return the answer to the current slot, or null if the client did not answer in time
+         */
+        synchronized String awaitAnswer(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (answer == null && !isClosed()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+            return answer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String message;
+                while ((message = read()) != null) {
+                    if (message.startsWith("TRANSMIT")) {
+                        synchronized (this) {
+                            answer = message;
+                            notifyAll();
+                        }
+                    } else if (message.startsWith("START")) {
+                        synchronized (MACChallengeSimulator.this) {
+                            startRequested = true;
+                            MACChallengeSimulator.this.notifyAll();
+                        }
+                    } else if (message.startsWith("CLOSED")) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // the client disconnected
+            }
+            synchronized (MACChallengeSimulator.this) {
+                closed = true;
+                MACChallengeSimulator.this.notifyAll();
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package simulator;
+
+import framework.IMACProtocol;
+import framework.MediumState;
+import framework.TransmissionInfo;
+import framework.TransmissionType;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs MAC protocols in process, without a server or sockets, so a protocol can be measured over millions of slots in
+ * seconds instead of a slot per round trip.
+ *
+ * Every client is an instance of the protocol. In every slot packets arrive in the queues, every instance is given the
+ * state of the medium in the previous slot, the control information if that slot was a success, and its queue length,
+ * exactly like {@link MACChallengeSimulator} and the server do. A slot in which exactly one client transmits is a
+ * success, and delivers a packet if the client sent data; more transmitters collide.
+ *
+ * Packets arrive in bursts: the number of bursts per client per slot is Poisson distributed with mean arrival / burst,
+ * and the size of a burst is geometric with mean burst. The offered load is therefore arrival packets per client per
+ * slot whatever the burst size, and a burst size of 1 gives plain Poisson arrivals.
+ *
+ * A run is repeatable: the arrivals and every client draw from their own SplittableRandom, all split from one seeded
+ * generator. A client only gets one if its protocol has a constructor that takes a SplittableRandom; a protocol that
+ * creates its own random numbers makes its runs differ.
+ *
+ * At the end the simulator reports the throughput (the fraction of slots that delivered data), the collision rate,
+ * the mean latency of a packet, the packets every client delivered and Jain's fairness index over them. The simulation
+ * is configured with name=value arguments, for example
+ * {@code java simulator.MACSlotSimulator protocol=my_protocol.ChannelProtocol burst=5}:
+ * <ul>
+ * <li>protocol: the class of the protocol, which needs a public constructor that takes a SplittableRandom or no
+ * arguments, my_protocol.ChannelProtocol by default</li>
+ * <li>clients: the number of clients sharing the medium, 4 by default</li>
+ * <li>slots: the number of slots to simulate, 1000000 by default</li>
+ * <li>packets: the number of packets in every queue at the start, 0 by default</li>
+ * <li>arrival: the mean number of packets added to a queue per slot, 0.25 by default</li>
+ * <li>burst: the mean number of packets that arrive together, 1 by default</li>
+ * <li>seed: the seed of the packet arrivals and of the random decisions of the clients, so runs can be repeated</li>
+ * <li>verbose: whether to keep what the protocols print, false by default since printing every slot is most of the
+ * time a protocol takes</li>
+ * </ul>
+ */
+public class MACSlotSimulator {
+
+    private Function<SplittableRandom, IMACProtocol> protocol = random -> create("my_protocol.ChannelProtocol", random);
+    private int clientCount = 4;
+    private long slots = 1_000_000;
+    private int initialPackets = 0;
+    private double arrival = 0.25;
+    private double burst = 1;
+    private long seed = 1;
+    private boolean verbose = false;
+
+    public static void main(String[] args) {
+        MACSlotSimulator simulator = new MACSlotSimulator();
+        for (String arg : args) {
+            simulator.configure(arg);
+        }
+        long start = System.nanoTime();
+        Result result = simulator.verbose ? simulator.run() : withoutOutput(simulator::run);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("[SIMULATOR] %d slots in %.2f s (%.0f slots per second).%n",
+            result.getSlots(), seconds, result.getSlots() / seconds);
+        System.out.println("[SIMULATOR] " + result);
+        for (int i = 0; i < result.getClients(); i++) {
+            System.out.println("[SIMULATOR] Client " + i + " delivered " + result.getDelivered(i)
+                + " packets, " + result.getQueueLength(i) + " left in its queue.");
+        }
+    }
+
+    /**
+     * Applies one name=value argument.
+     *
+     * @throws IllegalArgumentException if the argument is not a known setting
+     */
+    public void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "protocol": protocol = random -> create(value, random); break;
+            case "clients": clientCount = Integer.parseInt(value); break;
+            case "slots": slots = Long.parseLong(value); break;
+            case "packets": initialPackets = Integer.parseInt(value); break;
+            case "arrival": arrival = Double.parseDouble(value); break;
+            case "burst": burst = Double.parseDouble(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            case "verbose": verbose = Boolean.parseBoolean(value); break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    /**
+     * Uses the given factory for the protocol of every client instead of a class name. The factory is given the source
+     * of random numbers of the client, which the protocol should use for the run to be repeatable.
+     */
+    public void setProtocol(Function<SplittableRandom, IMACProtocol> protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Runs the given code with System.out discarded, for the protocols that print every slot. Runs that happen at the
+     * same time should all be inside one call, since System.out is shared.
+     */
+    static <T> T withoutOutput(Supplier<T> code) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return code.get();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Runs the simulation with new instances of the protocol. Does not discard what the protocols print, see
+     * {@link #withoutOutput}.
+     *
+     * @return the statistics of the run
+     * @throws IllegalStateException if a protocol sends data while its queue is empty, which the client of the
+     *                               framework refuses as well
+     */
+    public Result run() {
+        if (burst < 1) {
+            throw new IllegalArgumentException("The burst size must be at least 1, got " + burst);
+        }
+        // the arrivals come first, so they are the same whatever the protocol
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom arrivals = random.split();
+        IMACProtocol[] clients = new IMACProtocol[clientCount];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = protocol.apply(random.split());
+        }
+        long[] queueLengths = new long[clientCount];
+        Arrays.fill(queueLengths, initialPackets);
+        Result result = new Result(clientCount);
+        result.offered = (long) initialPackets * clientCount;
+
+        // the packets in all queues together
+        long queued = result.offered;
+
+        // Poisson bursts are drawn by comparing a running product of uniforms against e^-mean
+        double burstThreshold = Math.exp(-arrival / burst);
+        // a geometric burst size with mean burst continues with this probability
+        double burstContinue = 1 - 1 / burst;
+
+        // what happened in the previous slot
+        MediumState state = MediumState.Idle;
+        int controlInformation = 0;
+
+        for (long slot = 0; slot < slots; slot++) {
+            for (int i = 0; i < clients.length; i++) {
+                for (double p = arrivals.nextDouble(); p > burstThreshold; p *= arrivals.nextDouble()) {
+                    do {
+                        queueLengths[i]++;
+                        queued++;
+                        result.offered++;
+                    } while (arrivals.nextDouble() < burstContinue);
+                }
+            }
+            // every packet in a queue waits this slot, including the one that is sent in it
+            result.queuedSlots += queued;
+
+            // ask every client and find out what happens on the medium
+            int transmitter = -1;
+            int transmitters = 0;
+            boolean data = false;
+            int nextControlInformation = 0;
+            for (int i = 0; i < clients.length; i++) {
+                int queueLength = (int) Math.min(queueLengths[i], Integer.MAX_VALUE);
+                TransmissionInfo info = clients[i].TimeslotAvailable(state,
+                    state == MediumState.Succes ? controlInformation : 0, queueLength);
+                if (info == null || info.GetTransmissionType() == TransmissionType.Silent) {
+                    continue;
+                }
+                if (info.GetTransmissionType() == TransmissionType.Data && queueLength == 0) {
+                    throw new IllegalStateException("Client " + i + " sent data without packets in its queue"
+                        + " in slot " + slot + ".");
+                }
+                transmitters++;
+                transmitter = i;
+                nextControlInformation = info.GetControlInformation();
+                data = info.GetTransmissionType() == TransmissionType.Data;
+            }
+
+            if (transmitters == 0) {
+                state = MediumState.Idle;
+                result.idle++;
+            } else if (transmitters > 1) {
+                state = MediumState.Collision;
+                result.collisions++;
+            } else {
+                state = MediumState.Succes;
+                controlInformation = nextControlInformation;
+                if (data) {
+                    queueLengths[transmitter]--;
+                    queued--;
+                    result.delivered[transmitter]++;
+                } else {
+                    result.noData++;
+                }
+            }
+            result.slots++;
+        }
+        result.queueLengths = queueLengths;
+        return result;
+    }
+
+    /**
+     * Creates a protocol by class name, passing it the given source of random numbers if it has a constructor for it.
+     */
+    private static IMACProtocol create(String className, SplittableRandom random) {
+        try {
+            Class<?> protocolClass = Class.forName(className);
+            try {
+                return (IMACProtocol) protocolClass.getConstructor(SplittableRandom.class).newInstance(random);
+            } catch (NoSuchMethodException e) {
+                return (IMACProtocol) protocolClass.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot create protocol " + className, e);
+        }
+    }
+
+    /**
+     * The statistics of a simulation.
+     */
+    public static class Result {
+        private long slots;
+        private long offered;
+        private long queuedSlots;
+        private long idle;
+        private long collisions;
+        private long noData;
+        private final long[] delivered;
+        private long[] queueLengths;
+
+        private Result(int clients) {
+            delivered = new long[clients];
+        }
+
+        public int getClients() {
+            return delivered.length;
+        }
+
+        public long getSlots() {
+            return slots;
+        }
+
+        /**
+         * @return the number of packets that were put in the queues, at the start or during the simulation
+         */
+        public long getOffered() {
+            return offered;
+        }
+
+        public long getIdle() {
+            return idle;
+        }
+
+        public long getCollisions() {
+            return collisions;
+        }
+
+        /**
+         * @return the number of successful slots that carried control information only
+         */
+        public long getNoData() {
+            return noData;
+        }
+
+        /**
+         * @return the number of packets the given client delivered
+         */
+        public long getDelivered(int client) {
+            return delivered[client];
+        }
+
+        /**
+         * @return the number of packets the given client had left in its queue at the end
+         */
+        public long getQueueLength(int client) {
+            return queueLengths[client];
+        }
+
+        /**
+         * @return the number of packets all clients delivered together
+         */
+        public long getTotalDelivered() {
+            return Arrays.stream(delivered).sum();
+        }
+
+        /**
+         * @return the fraction of slots that delivered data
+         */
+        public double getThroughput() {
+            return slots == 0 ? 0 : (double) getTotalDelivered() / slots;
+        }
+
+        /**
+         * @return the mean number of slots a packet spends in its queue, including the slot that sends it. Computed
+         * with Little's law from the average queue length, so packets still queued at the end count as well, and an
+         * overloaded medium shows up as a latency that grows with the number of slots.
+         */
+        public double getMeanLatency() {
+            return offered == 0 ? 0 : (double) queuedSlots / offered;
+        }
+
+        /**
+         * @return the fraction of slots with a collision
+         */
+        public double getCollisionRate() {
+            return slots == 0 ? 0 : (double) collisions / slots;
+        }
+
+        /**
+         * @return Jain's fairness index over the packets the clients delivered: 1 if all delivered the same, down to
+         * 1 / clients if one client delivered everything. 1 if nothing was delivered.
+         */
+        public double getFairness() {
+            double sum = 0;
+            double squares = 0;
+            for (long count : delivered) {
+                sum += count;
+                squares += (double) count * count;
+            }
+            return squares == 0 ? 1 : sum * sum / (delivered.length * squares);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d slots: %d delivered data (throughput %.1f%%), %d without data, %d idle, "
+                    + "%d collisions (%.1f%%), mean latency %.1f slots, fairness %.3f, %d packets offered.", slots,
+                getTotalDelivered(), 100 * getThroughput(), noData, idle, collisions, 100 * getCollisionRate(),
+                getMeanLatency(), getFairness(), offered);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package simulator;
+
+import framework.IMACProtocol;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Sweeps the parameters of a MAC protocol and the medium with {@link MACSlotSimulator}, running the independent
+ * simulations in parallel on a ForkJoinPool, and writes the resulting throughput and latency surface as CSV.
+ *
+ * Every combination of the swept values is a point, which is simulated a number of times. Run r of every point uses
+ * the same seed, drawn from a SplittableRandom seeded with seed, for its packet arrivals and the random decisions of its
+ * clients, so neighbouring points differ by their parameters rather than by their luck with the arrivals. A sweep can
+ * be repeated exactly if the protocol takes its random numbers from the simulator, through a constructor with a
+ * SplittableRandom as last argument (see {@link MACSlotSimulator}); otherwise only the arrivals repeat. A row of
+ * the CSV holds the means over the runs of a point and the standard deviation of its throughput. A point where a run
+ * failed, for example because the protocol threw an exception for its parameters, gets NaN instead.
+ *
+ * The sweep is configured with name=value arguments, for example
+ * {@code java simulator.MACSweep protocol=my_protocol.SlottedAlohaSimplified parameter=5:50:5 clients=2,4,8}.
+ * Swept values are a list such as {@code 2,4,8} or a range from:to:step such as {@code 5:50:5}.
+ * <ul>
+ * <li>protocol: the class of the protocol, my_protocol.SlottedAlohaSimplified by default</li>
+ * <li>parameter: the values to pass to the constructor of the protocol that takes an int, such as the transmit
+ * probability of SlottedAlohaSimplified, the number of clients of ChannelProtocol or the longest turn of
+ * ReservationProtocol. If not given, the constructor without arguments is used</li>
+ * <li>clients: the numbers of clients, 4 by default</li>
+ * <li>arrival: the mean numbers of packets added to a queue per slot, 0.25 by default</li>
+ * <li>burst: the mean numbers of packets that arrive together, 1 by default</li>
+ * <li>slots: the number of slots of every simulation, 100000 by default</li>
+ * <li>runs: the number of simulations of every point, 4 by default</li>
+ * <li>seed: the seed the seeds of the runs are drawn from, 1 by default</li>
+ * <li>threads: the number of simulations to run at the same time, the number of cores by default</li>
+ * <li>out: the file to write the CSV to, sweep.csv by default</li>
+ * </ul>
+ */
+public class MACSweep {
+
+    private String protocolName = "my_protocol.SlottedAlohaSimplified";
+    private int[] parameters = null;
+    private int[] clientCounts = {4};
+    private double[] arrivals = {0.25};
+    private double[] bursts = {1};
+    private long slots = 100_000;
+    private int runs = 4;
+    private long seed = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String out = "sweep.csv";
+
+    public static void main(String[] args) throws FileNotFoundException, InterruptedException {
+        MACSweep sweep = new MACSweep();
+        for (String arg : args) {
+            sweep.configure(arg);
+        }
+        sweep.run();
+    }
+
+    /**
+     * Applies one name=value argument.
+     */
+    private void configure(String arg) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        switch (name) {
+            case "protocol": protocolName = value; break;
+            case "parameter": parameters = toInts(parseValues(value)); break;
+            case "clients": clientCounts = toInts(parseValues(value)); break;
+            case "arrival": arrivals = parseValues(value); break;
+            case "burst": bursts = parseValues(value); break;
+            case "slots": slots = Long.parseLong(value); break;
+            case "runs": runs = Integer.parseInt(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            case "threads": threads = Integer.parseInt(value); break;
+            case "out": out = value; break;
+            default: throw new IllegalArgumentException("Unknown setting " + name);
+        }
+    }
+
+    private void run() throws FileNotFoundException, InterruptedException {
+        // every point uses the same seeds, one per run
+        SplittableRandom seeds = new SplittableRandom(seed);
+        long[] runSeeds = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            runSeeds[run] = seeds.nextLong();
+        }
+
+        List<Point> points = new ArrayList<>();
+        for (int parameter : parameters == null ? new int[]{0} : parameters) {
+            for (int clients : clientCounts) {
+                for (double arrival : arrivals) {
+                    for (double burst : bursts) {
+                        points.add(new Point(parameter, clients, arrival, burst));
+                    }
+                }
+            }
+        }
+        List<Simulation> simulations = new ArrayList<>();
+        for (Point point : points) {
+            for (int run = 0; run < runs; run++) {
+                simulations.add(new Simulation(point, runSeeds[run]));
+            }
+        }
+
+        System.out.println("[SWEEP] " + points.size() + " points of " + runs + " runs of " + slots + " slots on "
+            + threads + " threads...");
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            MACSlotSimulator.withoutOutput(() -> {
+                try {
+                    return pool.submit(() -> simulations.parallelStream().map(Simulation::run).toArray()).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("The sweep failed", e.getCause());
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failures = 0;
+        try (PrintStream csv = new PrintStream(out)) {
+            csv.println("protocol,parameter,clients,arrival,burst,runs,slots,throughput,throughput_sd,"
+                + "collision_rate,mean_latency,fairness");
+            for (int i = 0; i < points.size(); i++) {
+                Point point = points.get(i);
+                double[] throughput = new double[runs];
+                double collisionRate = 0;
+                double latency = 0;
+                double fairness = 0;
+                for (int run = 0; run < runs; run++) {
+                    Simulation simulation = simulations.get(i * runs + run);
+                    MACSlotSimulator.Result result = simulation.result;
+                    if (result == null) {
+                        failures++;
+                        System.out.println("[SWEEP] Run " + run + " of parameter " + point.parameter + ", "
+                            + point.clients + " clients, arrival " + point.arrival + ", burst " + point.burst
+                            + " failed: " + simulation.failure);
+                        throughput[run] = collisionRate = latency = fairness = Double.NaN;
+                        continue;
+                    }
+                    throughput[run] = result.getThroughput();
+                    collisionRate += result.getCollisionRate() / runs;
+                    latency += result.getMeanLatency() / runs;
+                    fairness += result.getFairness() / runs;
+                }
+                csv.println(String.format(Locale.ROOT, "%s,%s,%d,%s,%s,%d,%d,%.6f,%.6f,%.6f,%.3f,%.6f",
+                    protocolName, parameters == null ? "" : Integer.toString(point.parameter), point.clients,
+                    point.arrival, point.burst, runs, slots, mean(throughput), standardDeviation(throughput),
+                    collisionRate, latency, fairness));
+            }
+        }
+        System.out.printf("[SWEEP] %d simulations in %.2f s (%.0f slots per second), %d failed, written to %s.%n",
+            simulations.size(), seconds, simulations.size() * slots / seconds, failures, out);
+    }
+
+    /**
+     * @return a factory of the protocol of a point, which passes the protocol its source of random numbers if it has
+     * a constructor for it
+     */
+    private Function<SplittableRandom, IMACProtocol> getProtocol(int parameter) {
+        try {
+            Class<?> protocolClass = Class.forName(protocolName);
+            Class<?>[] parameterTypes = parameters == null ? new Class<?>[0] : new Class<?>[]{int.class};
+            Class<?>[] seededTypes = Arrays.copyOf(parameterTypes, parameterTypes.length + 1);
+            seededTypes[parameterTypes.length] = SplittableRandom.class;
+            Constructor<?> seeded = null;
+            try {
+                seeded = protocolClass.getConstructor(seededTypes);
+            } catch (NoSuchMethodException e) {
+                // the protocol makes its own random numbers
+            }
+            Constructor<?> constructor = seeded != null ? seeded : protocolClass.getConstructor(parameterTypes);
+            boolean takesRandom = seeded != null;
+            return random -> {
+                Object[] arguments = parameters == null ? new Object[0] : new Object[]{parameter};
+                if (takesRandom) {
+                    arguments = Arrays.copyOf(arguments, arguments.length + 1);
+                    arguments[arguments.length - 1] = random;
+                }
+                try {
+                    return (IMACProtocol) constructor.newInstance(arguments);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalArgumentException("Cannot create protocol " + protocolName, e);
+                }
+            };
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create protocol " + protocolName
+                + (parameters == null ? "" : " with an int parameter"), e);
+        }
+    }
+
+    /**
+     * Parses a list of values such as 1,2,4 or a range from:to:step such as 0.1:0.5:0.1, which includes to.
+     */
+    static double[] parseValues(String value) {
+        String[] range = value.split(":");
+        if (range.length == 3) {
+            double from = Double.parseDouble(range[0]);
+            double to = Double.parseDouble(range[1]);
+            double step = Double.parseDouble(range[2]);
+            if (step <= 0) {
+                throw new IllegalArgumentException("The step of a range must be positive, got " + value);
+            }
+            // a little slack, so 0.1:0.5:0.1 includes 0.5 despite rounding
+            int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+            double[] values = new double[Math.max(count, 0)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = from + i * step;
+            }
+            return values;
+        }
+        String[] list = value.split(",");
+        double[] values = new double[list.length];
+        for (int i = 0; i < list.length; i++) {
+            values[i] = Double.parseDouble(list[i]);
+        }
+        return values;
+    }
+
+    private static int[] toInts(double[] values) {
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = (int) Math.round(values[i]);
+            if (Math.abs(ints[i] - values[i]) > 1e-9) {
+                throw new IllegalArgumentException("Expected whole numbers, got " + values[i]);
+            }
+        }
+        return ints;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+    private static double standardDeviation(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(squares / (values.length - 1));
+    }
+
+    /**
+     * A combination of swept values.
+     */
+    private static class Point {
+        final int parameter;
+        final int clients;
+        final double arrival;
+        final double burst;
+
+        Point(int parameter, int clients, double arrival, double burst) {
+            this.parameter = parameter;
+            this.clients = clients;
+            this.arrival = arrival;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * One run of a point, which keeps its result.
+     */
+    private class Simulation {
+        final Point point;
+        final long seed;
+
+        // The result of the run, or null if it failed with the given exception.
+        MACSlotSimulator.Result result;
+        RuntimeException failure;
+
+        Simulation(Point point, long seed) {
+            this.point = point;
+            this.seed = seed;
+        }
+
+        Simulation run() {
+            MACSlotSimulator simulator = new MACSlotSimulator();
+            simulator.setProtocol(getProtocol(point.parameter));
+            simulator.configure("clients=" + point.clients);
+            simulator.configure("arrival=" + point.arrival);
+            simulator.configure("burst=" + point.burst);
+            simulator.configure("slots=" + slots);
+            simulator.configure("seed=" + seed);
+            try {
+                result = simulator.run();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            return this;
+        }
+    }
+}